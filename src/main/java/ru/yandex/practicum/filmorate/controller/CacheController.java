@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.service.CacheService;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/caches")
+public class CacheController {
+    private final CacheService cacheService;
+
+    @Autowired
+    public CacheController(CacheService cacheService) {
+        this.cacheService = cacheService;
+    }
+
+    @GetMapping
+    public List<CacheStats> getCacheStats() {
+        return cacheService.getCacheStats();
+    }
+
+    @DeleteMapping("/{name}")
+    public void invalidate(@PathVariable String name) {
+        cacheService.invalidate(name);
+    }
+}
@@ -68,6 +68,13 @@ public class ErrorHandler {
         return new ErrorResponse("Режиссер не найден.");
     }
 
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public ErrorResponse handlePurgeJobNotFound(PurgeJobDoesNotExistException e) {
+        log.error(e.getMessage());
+        return new ErrorResponse("Задача удаления не найдена");
+    }
+
     @ExceptionHandler
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ErrorResponse handleUnknownException(Throwable e) {
@@ -2,13 +2,23 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmImportResult;
+import ru.yandex.practicum.filmorate.model.LikeIngestResult;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.Suggestion;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
+import java.io.InputStream;
 import java.util.Collection;
 import java.util.List;
 
@@ -19,22 +29,58 @@ import java.util.List;
 public class FilmController {
 
     private final FilmService filmService;
+    private final JsonStreamWriter jsonStreamWriter;
+    private final JsonStreamReader jsonStreamReader;
 
     @Autowired
-    public FilmController(FilmService filmService) {
+    public FilmController(FilmService filmService, JsonStreamWriter jsonStreamWriter,
+                          JsonStreamReader jsonStreamReader) {
         this.filmService = filmService;
+        this.jsonStreamWriter = jsonStreamWriter;
+        this.jsonStreamReader = jsonStreamReader;
     }
 
+    /**
+     * Собирает весь каталог в памяти и отдаёт одним массивом. Оставлен для совместимости: для больших
+     * каталогов используйте постраничный режим ({@code limit}/{@code after}) или поток {@code /films/export}.
+     */
+    @Deprecated
     @GetMapping
     public Collection<Film> getFilms() {
         return filmService.getFilms();
     }
 
+    @GetMapping(params = "limit")
+    public List<Film> getFilms(@Positive @Max(FilmService.MAX_PAGE_LIMIT) @RequestParam int limit,
+                               @RequestParam(defaultValue = "0") long after) {
+        return filmService.getFilms(after, limit);
+    }
+
+    @GetMapping(params = {"after", "!limit"})
+    public List<Film> getFilmsAfter(@RequestParam long after) {
+        return filmService.getFilms(after, FilmService.DEFAULT_PAGE_LIMIT);
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportFilms() {
+        return jsonStreamWriter.writeLines(filmService::exportFilms);
+    }
+
     @PostMapping
     public Film create(@Valid @RequestBody Film film) {
         return filmService.create(film);
     }
 
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_JSON_VALUE, "application/x-ndjson"})
+    public List<FilmImportResult> importFilms(InputStream body) {
+        return filmService.importFilms(sink -> jsonStreamReader.readValues(body, Film.class, sink));
+    }
+
+    @PostMapping(value = "/likes/import", consumes = {MediaType.APPLICATION_JSON_VALUE, "application/x-ndjson"})
+    public LikeIngestResult ingestLikes(InputStream body) {
+        return filmService.ingestLikes(sink -> jsonStreamReader.readValues(body, LikeOperation.class, sink));
+    }
+
     @PutMapping
     public Film update(@Valid @RequestBody Film film) {
         return filmService.update(film);
@@ -56,8 +102,10 @@ public class FilmController {
     }
 
     @GetMapping("/popular")
-    public List<Film> getMostPopularFilms(@RequestParam(defaultValue = "10") int count) {
-        return filmService.getMostPopularFilms(count);
+    public List<Film> getMostPopularFilms(@RequestParam(defaultValue = "10") int count,
+                                          @RequestParam(required = false) Integer genreId,
+                                          @RequestParam(required = false) Integer year) {
+        return filmService.getMostPopularFilms(count, genreId, year);
     }
 
     @DeleteMapping(value = "/{filmId}")
@@ -70,6 +118,18 @@ public class FilmController {
         return filmService.getFilmsByDirectorOrTitle(query, by);
     }
 
+    @GetMapping("/suggest")
+    public List<Suggestion> getSuggestions(@NotNull @RequestParam String query,
+                                           @Positive @RequestParam(defaultValue = "10") int count) {
+        return filmService.getSuggestions(query, count);
+    }
+
+    @GetMapping("/{id}/similar")
+    public List<Film> getSimilarFilms(@NotNull @PathVariable long id,
+                                      @Positive @RequestParam(defaultValue = "10") int count) {
+        return filmService.getSimilarFilms(id, count);
+    }
+
     @GetMapping("/director/{directorId}")
     public List<Film> getFilmsByDirectorIdSortedByYearOrLikes(@NotNull @PathVariable int directorId,
                                                               @NotNull @RequestParam String sortBy) {
@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.function.BiConsumer;
+
+@Component
+public class JsonStreamReader {
+
+    private final ObjectMapper objectMapper;
+
+    public JsonStreamReader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Читает поток объектов — JSON-массив или NDJSON — и передаёт каждый в {@code sink} по мере разбора.
+     * Объект, который не удалось преобразовать, передаётся как {@code null} вместе с текстом ошибки,
+     * и чтение продолжается со следующего; синтаксическая ошибка прерывает чтение.
+     */
+    public <T> void readValues(InputStream inputStream, Class<T> type, BiConsumer<T, String> sink) {
+        try (MappingIterator<T> iterator = objectMapper.readerFor(type).readValues(inputStream)) {
+            while (true) {
+                try {
+                    if (!iterator.hasNextValue()) {
+                        return;
+                    }
+                    sink.accept(iterator.nextValue(), null);
+                } catch (JsonParseException e) {
+                    sink.accept(null, e.getOriginalMessage());
+                    return;
+                } catch (JsonMappingException e) {
+                    sink.accept(null, e.getOriginalMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.model.PurgeJob;
+import ru.yandex.practicum.filmorate.service.PurgeService;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/purges")
+public class PurgeController {
+    private final PurgeService purgeService;
+
+    @Autowired
+    public PurgeController(PurgeService purgeService) {
+        this.purgeService = purgeService;
+    }
+
+    @PostMapping("/users")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public PurgeJob purgeUsers(@RequestBody List<Long> userIds) {
+        return purgeService.purgeUsers(userIds);
+    }
+
+    @PostMapping("/films")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public PurgeJob purgeFilms(@RequestBody List<Long> filmIds) {
+        return purgeService.purgeFilms(filmIds);
+    }
+
+    @GetMapping("/{jobId}")
+    public PurgeJob getJob(@PathVariable long jobId) {
+        return purgeService.getJob(jobId);
+    }
+}
@@ -48,6 +48,14 @@ public class ReviewController {
         return reviewService.getReviewsOfFilm(filmId, count);
     }
 
+    @GetMapping(params = "afterReviewId")
+    public List<Review> getReviewsOfFilm(@RequestParam(defaultValue = "0") long filmId,
+                                         @RequestParam(defaultValue = "10") int count,
+                                         @RequestParam long afterUseful,
+                                         @RequestParam long afterReviewId) {
+        return reviewService.getReviewsOfFilm(filmId, afterUseful, afterReviewId, count);
+    }
+
     @PutMapping(value = "/{id}/like/{userId}")
     public void addLike(@NotNull @PathVariable long id, @NotNull @PathVariable long userId) {
         reviewService.addLike(id, userId);
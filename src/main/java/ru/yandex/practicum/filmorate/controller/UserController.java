@@ -2,16 +2,22 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.UserBatch;
 import ru.yandex.practicum.filmorate.service.EventService;
+import ru.yandex.practicum.filmorate.service.FriendSuggestionService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
 import java.util.Collection;
 import java.util.List;
 
@@ -23,18 +29,41 @@ public class UserController {
 
     private final UserService userService;
     private final EventService eventService;
+    private final JsonStreamWriter jsonStreamWriter;
 
     @Autowired
-    public UserController(UserService userService, EventService eventService) {
+    public UserController(UserService userService, EventService eventService, JsonStreamWriter jsonStreamWriter) {
         this.userService = userService;
         this.eventService = eventService;
+        this.jsonStreamWriter = jsonStreamWriter;
     }
 
+    /**
+     * Собирает всех пользователей в памяти и отдаёт одним массивом. Оставлен для совместимости: для больших
+     * таблиц используйте постраничный режим ({@code limit}/{@code after}) или поток {@code /users/export}.
+     */
+    @Deprecated
     @GetMapping
     public Collection<User> getUsers() {
         return userService.getUsers();
     }
 
+    @GetMapping(params = "limit")
+    public List<User> getUsers(@Positive @Max(UserService.MAX_PAGE_LIMIT) @RequestParam int limit,
+                               @RequestParam(defaultValue = "0") long after) {
+        return userService.getUsers(after, limit);
+    }
+
+    @GetMapping(params = {"after", "!limit"})
+    public List<User> getUsersAfter(@RequestParam long after) {
+        return userService.getUsers(after, UserService.DEFAULT_PAGE_LIMIT);
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportUsers() {
+        return jsonStreamWriter.writeLines(userService::forEachUser);
+    }
+
     @PostMapping
     public User create(@Valid @RequestBody User user) {
         return userService.create(user);
@@ -45,6 +74,11 @@ public class UserController {
         return userService.update(user);
     }
 
+    @GetMapping("/batch")
+    public UserBatch findUsersByIds(@RequestParam List<Long> ids) {
+        return userService.findUsersByIds(ids);
+    }
+
     @GetMapping("/{id}")
     public User findUserById(@NotNull @PathVariable long id) {
         return userService.findUserById(id);
@@ -65,6 +99,13 @@ public class UserController {
         return userService.getAllFriends(id);
     }
 
+    @GetMapping("/{id}/friends/suggestions")
+    public List<User> getFriendSuggestions(@NotNull @PathVariable long id,
+                                           @Positive @Max(FriendSuggestionService.MAX_SUGGESTIONS)
+                                           @RequestParam(defaultValue = "10") int limit) {
+        return userService.getFriendSuggestions(id, limit);
+    }
+
     @GetMapping("/{id}/friends/common/{otherId}")
     public List<User> getMutualFriends(@NotNull @PathVariable long id, @NotNull @PathVariable long otherId) {
         return userService.getMutualFriends(id, otherId);
@@ -80,9 +121,22 @@ public class UserController {
         return userService.getRecommendations(userId);
     }
 
+    @GetMapping("/{userId}/friends/feed")
+    public List<Event> getFriendsFeed(@NotNull @PathVariable long userId,
+                                      @Positive @RequestParam(defaultValue = "20") int limit) {
+        return eventService.findFriendsEvents(userId, limit);
+    }
+
     @GetMapping("/{userId}/feed")
     public List<Event> getUserFeed(@NotNull @PathVariable long userId) {
         return eventService.findUserEvent(userId);
     }
+
+    @GetMapping(value = "/{userId}/feed", params = "limit")
+    public List<Event> getUserFeed(@NotNull @PathVariable long userId, @Positive @RequestParam int limit,
+                                   @RequestParam(defaultValue = "0") long afterTimestamp,
+                                   @RequestParam(defaultValue = "0") long afterEventId) {
+        return eventService.findUserEvents(userId, afterTimestamp, afterEventId, limit);
+    }
 }
 
@@ -0,0 +1,4 @@
+package ru.yandex.practicum.filmorate.exception;
+
+public class PurgeJobDoesNotExistException extends RuntimeException {
+}
@@ -13,4 +13,13 @@ public enum EventOperation {
     EventOperation(int id) {
         this.id = id;
     }
+
+    public static EventOperation fromId(int id) {
+        for (EventOperation value : values()) {
+            if (value.id == id) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный id: " + id);
+    }
 }
@@ -14,4 +14,12 @@ public enum EventType {
         this.id = id;
     }
 
+    public static EventType fromId(int id) {
+        for (EventType value : values()) {
+            if (value.id == id) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный id: " + id);
+    }
 }
@@ -15,6 +15,7 @@ import java.util.Set;
 public class Film {
     private Long id;
     @NotEmpty(message = "Название не должно быть пустым")
+    @Length(max = 30, message = "Максимальная длина названия — 30 символов")
     private final String name;
     @Length(max = 200, message = "Максимальная длина описания — 200 символов")
     @NotNull
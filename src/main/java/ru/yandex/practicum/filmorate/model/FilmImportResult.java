@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+@Data
+public class FilmImportResult {
+    private final int index;
+    private final Long id;
+    private final String error;
+
+    public static FilmImportResult imported(int index, long id) {
+        return new FilmImportResult(index, id, null);
+    }
+
+    public static FilmImportResult failed(int index, String error) {
+        return new FilmImportResult(index, null, error);
+    }
+}
@@ -0,0 +1,10 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+@Data
+public class LikeIngestResult {
+    private final long received;
+    private final long rejected;
+    private final long applied;
+}
@@ -0,0 +1,10 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+@Data
+public class LikeOperation {
+    private final Long filmId;
+    private final Long userId;
+    private final EventOperation operation;
+}
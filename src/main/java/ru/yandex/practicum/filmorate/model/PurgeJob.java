@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+@Data
+public class PurgeJob {
+    private final long id;
+    private final PurgeTarget target;
+    private final int total;
+    private volatile PurgeStatus status = PurgeStatus.QUEUED;
+    private volatile int processed;
+    private volatile long deletedRows;
+    private volatile Long finishedAt;
+    private final List<Long> missingIds = new CopyOnWriteArrayList<>();
+}
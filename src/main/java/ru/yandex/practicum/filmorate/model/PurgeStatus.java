@@ -0,0 +1,8 @@
+package ru.yandex.practicum.filmorate.model;
+
+public enum PurgeStatus {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED
+}
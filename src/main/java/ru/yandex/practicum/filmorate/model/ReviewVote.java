@@ -0,0 +1,11 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+@Data
+public class ReviewVote {
+    private final Long reviewId;
+    private final Long userId;
+    private final boolean positive;
+    private final EventOperation operation;
+}
@@ -0,0 +1,10 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+@Data
+public class Suggestion {
+    private final SuggestionType type;
+    private final long id;
+    private final String name;
+}
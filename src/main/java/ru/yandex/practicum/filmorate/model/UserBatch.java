@@ -0,0 +1,11 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class UserBatch {
+    private final List<User> users;
+    private final List<Long> missingIds;
+}
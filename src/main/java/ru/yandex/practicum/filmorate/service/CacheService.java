@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.cache.FilmCache;
+
+import java.util.List;
+
+@Service
+@Slf4j
+public class CacheService {
+    private final GenreStorage genreStorage;
+    private final MpaStorage mpaStorage;
+    private final FilmCache filmCache;
+
+    @Autowired
+    public CacheService(GenreStorage genreStorage, MpaStorage mpaStorage, FilmCache filmCache) {
+        this.genreStorage = genreStorage;
+        this.mpaStorage = mpaStorage;
+        this.filmCache = filmCache;
+    }
+
+    public List<CacheStats> getCacheStats() {
+        return List.of(genreStorage.getCacheStats(), mpaStorage.getCacheStats(), filmCache.getStats());
+    }
+
+    public void invalidate(String name) {
+        switch (name) {
+            case "genres":
+                genreStorage.invalidateCache();
+                filmCache.invalidateAll();
+                break;
+            case "mpa":
+                mpaStorage.invalidateCache();
+                filmCache.invalidateAll();
+                break;
+            case "films":
+                filmCache.invalidateAll();
+                break;
+            default:
+                log.warn("Кэш с именем {} не найден", name);
+                throw new ValidationException();
+        }
+    }
+}
@@ -12,13 +12,29 @@ import java.util.List;
 public class EventService {
 
     private final EventStorage eventStorage;
+    private final EventWriter eventWriter;
+    private final FriendsFeedService friendsFeedService;
 
     public void addEvent(Event event) {
-        eventStorage.addEvent(event);
+        eventWriter.add(event);
+        friendsFeedService.publish(event);
+    }
+
+    public void addEvents(List<Event> events) {
+        events.forEach(this::addEvent);
     }
 
     public List<Event> findUserEvent(Long userId) {
+        eventWriter.flush();
         return eventStorage.findUserEvent(userId);
     }
-}
 
+    public List<Event> findUserEvents(long userId, long afterTimestamp, long afterEventId, int limit) {
+        eventWriter.flush();
+        return eventStorage.findUserEvents(userId, afterTimestamp, afterEventId, limit);
+    }
+
+    public List<Event> findFriendsEvents(long userId, int limit) {
+        return friendsFeedService.getFriendsFeed(userId, limit);
+    }
+}
@@ -0,0 +1,194 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.storage.EventStorage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Асинхронная запись событий ленты. События складываются в ограниченную очередь, а один фоновый поток
+ * записывает их пачками, когда набралось {@code batchSize} событий или прошло {@code flushIntervalMs}
+ * с момента появления самого старого. Единственный писатель сохраняет порядок событий, в том числе
+ * для каждого пользователя. Если очередь заполнена, добавление ждёт, пока писатель её разгрузит.
+ */
+@Slf4j
+@Component
+public class EventWriter {
+
+    private final EventStorage eventStorage;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Deque<Event> queue = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition ready = lock.newCondition();
+    private final Condition written = lock.newCondition();
+    private long enqueuedCount;
+    private long writtenCount;
+    private long oldestEnqueuedAt;
+    private boolean flushRequested;
+    private volatile boolean running;
+    private Thread writerThread;
+
+    public EventWriter(EventStorage eventStorage,
+                       @Value("${filmorate.events.queue-capacity}") int capacity,
+                       @Value("${filmorate.events.batch-size}") int batchSize,
+                       @Value("${filmorate.events.flush-interval-ms}") long flushIntervalMs) {
+        this.eventStorage = eventStorage;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        writerThread = new Thread(this::runWriter, "event-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        lock.lock();
+        try {
+            running = false;
+            ready.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        writerThread.join();
+        log.info("Запись событий остановлена, записано событий: {}", writtenCount);
+    }
+
+    public void add(Event event) {
+        lock.lock();
+        try {
+            while (queue.size() >= capacity && running) {
+                notFull.awaitUninterruptibly();
+            }
+            if (running) {
+                if (queue.isEmpty()) {
+                    oldestEnqueuedAt = System.nanoTime();
+                }
+                queue.addLast(event);
+                enqueuedCount++;
+                if (queue.size() >= batchSize) {
+                    ready.signal();
+                }
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        eventStorage.addEvent(event);
+    }
+
+    /**
+     * Ждёт, пока будут записаны все события, добавленные до вызова.
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            long target = enqueuedCount;
+            if (writtenCount >= target) {
+                return;
+            }
+            flushRequested = true;
+            ready.signal();
+            while (writtenCount < target && writerThread.isAlive()) {
+                written.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runWriter() {
+        List<Event> batch = new ArrayList<>(batchSize);
+        while (true) {
+            lock.lock();
+            try {
+                while (!isBatchReady()) {
+                    if (!running && queue.isEmpty()) {
+                        written.signalAll();
+                        return;
+                    }
+                    if (queue.isEmpty()) {
+                        ready.awaitUninterruptibly();
+                    } else {
+                        long remaining = oldestEnqueuedAt + flushIntervalNanos - System.nanoTime();
+                        try {
+                            ready.awaitNanos(remaining);
+                        } catch (InterruptedException e) {
+                            log.warn("Поток записи событий прерван во время ожидания");
+                        }
+                    }
+                }
+                while (batch.size() < batchSize && !queue.isEmpty()) {
+                    batch.add(queue.pollFirst());
+                }
+                oldestEnqueuedAt = System.nanoTime();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            write(batch);
+            lock.lock();
+            try {
+                writtenCount += batch.size();
+                if (writtenCount >= enqueuedCount) {
+                    flushRequested = false;
+                }
+                written.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            batch.clear();
+        }
+    }
+
+    private boolean isBatchReady() {
+        if (queue.isEmpty()) {
+            return false;
+        }
+        return queue.size() >= batchSize || flushRequested || !running
+                || System.nanoTime() - oldestEnqueuedAt >= flushIntervalNanos;
+    }
+
+    /**
+     * Пишет пачку одним запросом. Если пачка не прошла (например, пользователь уже удалён),
+     * события пишутся по одному, а не прошедшие проверку пропускаются.
+     */
+    private void write(List<Event> batch) {
+        try {
+            eventStorage.addEvents(batch);
+        } catch (DataAccessException e) {
+            log.warn("Не удалось записать пачку из {} событий, запись по одному: {}", batch.size(), e.getMessage());
+            for (Event event : batch) {
+                try {
+                    eventStorage.addEvent(event);
+                } catch (DataAccessException eventException) {
+                    log.error("Событие пользователя с id {} не записано: {}", event.getUserId(),
+                            eventException.getMessage());
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Ошибка записи пачки из {} событий", batch.size(), e);
+        }
+    }
+}
@@ -3,36 +3,91 @@ package ru.yandex.practicum.filmorate.service;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.FilmDoesNotExistException;
+import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.EventOperation;
 import ru.yandex.practicum.filmorate.model.EventType;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmImportResult;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeIngestResult;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.storage.DirectorStorage;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 public class FilmService {
 
+    public static final int MAX_PAGE_LIMIT = 1000;
+    public static final int DEFAULT_PAGE_LIMIT = 100;
+    private static final int PAGE_SIZE = 500;
+    private static final int IMPORT_BATCH_SIZE = 500;
+    private static final int LIKE_BATCH_SIZE = 10_000;
     private final FilmStorage filmStorage;
+    private final GenreStorage genreStorage;
+    private final MpaStorage mpaStorage;
+    private final DirectorStorage directorStorage;
     private final EventService eventService;
+    private final Validator validator;
 
     @Autowired
-    public FilmService(@Qualifier("filmDbStorage") FilmStorage filmStorage, EventService eventService) {
+    public FilmService(@Qualifier("filmDbStorage") FilmStorage filmStorage, GenreStorage genreStorage,
+                       MpaStorage mpaStorage, DirectorStorage directorStorage, EventService eventService,
+                       Validator validator) {
         this.filmStorage = filmStorage;
+        this.genreStorage = genreStorage;
+        this.mpaStorage = mpaStorage;
+        this.directorStorage = directorStorage;
         this.eventService = eventService;
+        this.validator = validator;
     }
 
     public Collection<Film> getFilms() {
-        return Collections.unmodifiableCollection(filmStorage.getFilms().values());
+        List<Film> films = new ArrayList<>();
+        forEachFilm(films::add);
+        return Collections.unmodifiableCollection(films);
+    }
+
+    public List<Film> getFilms(long afterId, int limit) {
+        return filmStorage.getFilms(afterId, limit);
+    }
+
+    public void forEachFilm(Consumer<Film> action) {
+        long afterId = 0;
+        List<Film> page;
+        do {
+            page = filmStorage.getFilms(afterId, PAGE_SIZE);
+            page.forEach(action);
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == PAGE_SIZE);
+    }
+
+    public void exportFilms(Consumer<Film> action) {
+        filmStorage.exportFilms(action);
     }
 
     public Film create(Film film) {
@@ -40,8 +95,99 @@ public class FilmService {
         return filmStorage.create(film);
     }
 
+    /**
+     * Импортирует фильмы из {@code source}, который передаёт каждый прочитанный фильм либо текст ошибки чтения.
+     * Корректные фильмы записываются пачками, результат содержит id или ошибку для каждого фильма по порядку.
+     * Если пачка не записалась, её фильмы записываются по одному, чтобы ошибка досталась только виновным.
+     */
+    public List<FilmImportResult> importFilms(Consumer<BiConsumer<Film, String>> source) {
+        List<FilmImportResult> results = new ArrayList<>();
+        Set<Integer> directorIds = directorStorage.getAllDirectors().stream()
+                .map(Director::getId)
+                .collect(Collectors.toSet());
+        List<Film> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+        List<Integer> batchIndexes = new ArrayList<>(IMPORT_BATCH_SIZE);
+        source.accept((film, readError) -> {
+            int index = results.size();
+            String error = readError != null ? readError : validateForImport(film, directorIds);
+            if (error != null) {
+                results.add(FilmImportResult.failed(index, error));
+                return;
+            }
+            results.add(null);
+            film.setId(null);
+            batch.add(film);
+            batchIndexes.add(index);
+            if (batch.size() == IMPORT_BATCH_SIZE) {
+                saveImportBatch(batch, batchIndexes, results);
+            }
+        });
+        saveImportBatch(batch, batchIndexes, results);
+        log.info("Импортировано фильмов: {} из {}", results.stream().filter(result -> result.getId() != null)
+                .count(), results.size());
+        return results;
+    }
+
+    private String validateForImport(Film film, Set<Integer> directorIds) {
+        if (film == null) {
+            return "Пустое значение вместо фильма";
+        }
+        Set<ConstraintViolation<Film>> violations = validator.validate(film);
+        if (!violations.isEmpty()) {
+            return violations.stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining("; "));
+        }
+        if (!mpaStorage.getAllMpa().containsKey(film.getMpa().getId())) {
+            return "Рейтинг с id " + film.getMpa().getId() + " не найден";
+        }
+        for (Genre genre : film.getGenres()) {
+            if (!genreStorage.getAllGenres().containsKey(genre.getId())) {
+                return "Жанр с id " + genre.getId() + " не найден";
+            }
+        }
+        for (Director director : film.getDirectors()) {
+            if (!directorIds.contains(director.getId())) {
+                return "Режиссёр с id " + director.getId() + " не найден";
+            }
+        }
+        return null;
+    }
+
+    private void saveImportBatch(List<Film> batch, List<Integer> batchIndexes, List<FilmImportResult> results) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            List<Long> ids = filmStorage.createFilms(batch);
+            for (int i = 0; i < ids.size(); i++) {
+                results.set(batchIndexes.get(i), FilmImportResult.imported(batchIndexes.get(i), ids.get(i)));
+            }
+        } catch (DataAccessException e) {
+            log.warn("Не удалось сохранить пачку из {} фильмов, запись по одному: {}", batch.size(),
+                    e.getMessage());
+            for (int i = 0; i < batch.size(); i++) {
+                int index = batchIndexes.get(i);
+                results.set(index, saveImportedFilm(index, batch.get(i)));
+            }
+        }
+        batch.clear();
+        batchIndexes.clear();
+    }
+
+    private FilmImportResult saveImportedFilm(int index, Film film) {
+        film.setId(null);
+        try {
+            return FilmImportResult.imported(index, filmStorage.createFilms(List.of(film)).get(0));
+        } catch (DataAccessException e) {
+            log.warn("Фильм с индексом {} не сохранён: {}", index, e.getMostSpecificCause().getMessage());
+            return FilmImportResult.failed(index, "Ошибка сохранения фильма: " + e.getMostSpecificCause().getMessage());
+        }
+    }
+
     public Film update(Film film) {
-        if (filmStorage.findFilmById(film.getId()) == null) {
+        if (!filmStorage.filmExists(film.getId())) {
             log.warn("Невозможно обновить фильм");
             throw new FilmDoesNotExistException();
         }
@@ -71,11 +217,58 @@ public class FilmService {
         log.info("Лайк пользователя с id {} фильму с id {} удалён", userId, filmId);
     }
 
-    public List<Film> getMostPopularFilms(int count) {
-        return filmStorage.getFilms().values().stream()
-                .sorted((f1, f2) -> f2.getLikes().size() - f1.getLikes().size())
-                .limit(count)
-                .collect(Collectors.toList());
+    /**
+     * Применяет поток операций с лайками пачками. Внутри пачки повторные операции одного пользователя
+     * с одним фильмом схлопываются, побеждает последняя. События в ленту пишутся только
+     * для операций, изменивших состояние.
+     */
+    public LikeIngestResult ingestLikes(Consumer<BiConsumer<LikeOperation, String>> source) {
+        long[] received = {0};
+        long[] rejected = {0};
+        long[] applied = {0};
+        Map<Long, LikeOperation> pending = new LinkedHashMap<>();
+        source.accept((operation, readError) -> {
+            received[0]++;
+            if (readError != null || !isValidLikeOperation(operation)) {
+                rejected[0]++;
+                return;
+            }
+            pending.put(operation.getFilmId() << 32 | operation.getUserId(), operation);
+            if (pending.size() == LIKE_BATCH_SIZE) {
+                applied[0] += applyLikeBatch(pending);
+            }
+        });
+        applied[0] += applyLikeBatch(pending);
+        log.info("Загружено операций с лайками: {}, отклонено: {}, применено: {}", received[0], rejected[0],
+                applied[0]);
+        return new LikeIngestResult(received[0], rejected[0], applied[0]);
+    }
+
+    private static boolean isValidLikeOperation(LikeOperation operation) {
+        return operation != null
+                && operation.getFilmId() != null && operation.getFilmId() > 0
+                && operation.getFilmId() <= Integer.MAX_VALUE
+                && operation.getUserId() != null && operation.getUserId() > 0
+                && operation.getUserId() <= Integer.MAX_VALUE
+                && (operation.getOperation() == EventOperation.ADD
+                || operation.getOperation() == EventOperation.REMOVE);
+    }
+
+    private int applyLikeBatch(Map<Long, LikeOperation> pending) {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        List<LikeOperation> applied = filmStorage.applyLikes(pending.values());
+        pending.clear();
+        eventService.addEvents(applied.stream()
+                .map(operation -> new Event(operation.getUserId(), EventType.LIKE, operation.getOperation(),
+                        operation.getFilmId()))
+                .collect(Collectors.toList()));
+        return applied.size();
+    }
+
+    public List<Film> getMostPopularFilms(int count, Integer genreId, Integer year) {
+        return filmStorage.getMostPopularFilms(count, genreId, year);
     }
 
     public List<Film> getFilmsByDirectorOrTitle(String query, String by) {
@@ -86,9 +279,11 @@ public class FilmService {
             if (q.trim().equals("director")) director.set("director");
             if (q.trim().equals("title")) title.set("title");
         });
-        StringBuilder queryBuilder = new StringBuilder("%");
-        queryBuilder.append(query.toLowerCase()).append("%");
-        return filmStorage.getFilmsByDirectorOrTitle(queryBuilder.toString(), director.get(), title.get());
+        return filmStorage.getFilmsByDirectorOrTitle(query, director.get(), title.get());
+    }
+
+    public List<Suggestion> getSuggestions(String prefix, int count) {
+        return filmStorage.getSuggestions(prefix, count);
     }
 
     public void deleteFilm(long filmId) {
@@ -102,4 +297,8 @@ public class FilmService {
     public List<Film> getRecommendations(long userId) {
         return filmStorage.getRecommendations(userId);
     }
+
+    public List<Film> getSimilarFilms(long filmId, int count) {
+        return filmStorage.getSimilarFilms(filmId, count);
+    }
 }
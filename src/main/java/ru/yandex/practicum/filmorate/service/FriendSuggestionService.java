@@ -0,0 +1,111 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.UserDoesNotExistException;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.index.FriendGraph;
+
+import java.util.Arrays;
+
+/**
+ * Подбор возможных друзей: пользователи на расстоянии двух шагов по графу дружбы, упорядоченные
+ * по числу общих друзей (при равенстве — по id). Обход ограничен {@code fanout} друзьями на каждом шаге,
+ * чтобы пользователи с огромным числом друзей не делали расчёт неограниченным. Результат хранится
+ * в кэше до изменения друзей самого пользователя или его друзей.
+ */
+@Slf4j
+@Service
+public class FriendSuggestionService {
+
+    public static final int MAX_SUGGESTIONS = 100;
+
+    private final UserStorage userStorage;
+    private final FriendGraph friendGraph;
+    private final int fanout;
+    private final Cache<Long, int[]> suggestions;
+
+    public FriendSuggestionService(@Qualifier("userDbStorage") UserStorage userStorage, FriendGraph friendGraph,
+                                   @Value("${filmorate.friends.suggestions.fanout}") int fanout,
+                                   @Value("${filmorate.friends.suggestions.cache-size}") long cacheSize) {
+        this.userStorage = userStorage;
+        this.friendGraph = friendGraph;
+        this.fanout = fanout;
+        this.suggestions = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .build();
+    }
+
+    /**
+     * Возвращает id до {@link #MAX_SUGGESTIONS} возможных друзей, от лучшего к худшему.
+     */
+    public int[] getSuggestions(long userId) {
+        int[] cached = suggestions.getIfPresent(userId);
+        if (cached != null) {
+            return cached;
+        }
+        if (!userStorage.userExists(userId)) {
+            log.warn("Пользователь с id {} не найден", userId);
+            throw new UserDoesNotExistException();
+        }
+        int[] result = findSuggestions((int) userId);
+        suggestions.put(userId, result);
+        return result;
+    }
+
+    /**
+     * Сбрасывает подборки пользователя и тех, у кого он в друзьях: через него проходят их вторые шаги.
+     */
+    public void friendsChanged(long userId) {
+        suggestions.invalidate(userId);
+        for (int followerId : friendGraph.getFollowers(userId)) {
+            suggestions.invalidate((long) followerId);
+        }
+    }
+
+    public void userRemoved() {
+        suggestions.invalidateAll();
+    }
+
+    private int[] findSuggestions(int userId) {
+        int[] friends = friendGraph.getFriends(userId);
+        int friendsCount = Math.min(friends.length, fanout);
+        int total = 0;
+        for (int i = 0; i < friendsCount; i++) {
+            total += Math.min(friendGraph.getFriends(friends[i]).length, fanout);
+        }
+        int[] candidates = new int[total];
+        int size = 0;
+        for (int i = 0; i < friendsCount; i++) {
+            int[] friendsOfFriend = friendGraph.getFriends(friends[i]);
+            int length = Math.min(Math.min(friendsOfFriend.length, fanout), total - size);
+            System.arraycopy(friendsOfFriend, 0, candidates, size, length);
+            size += length;
+        }
+        Arrays.sort(candidates, 0, size);
+        long[] ranked = new long[size];
+        int rankedSize = 0;
+        int start = 0;
+        while (start < size) {
+            int end = start;
+            while (end < size && candidates[end] == candidates[start]) {
+                end++;
+            }
+            int candidate = candidates[start];
+            if (candidate != userId && Arrays.binarySearch(friends, candidate) < 0) {
+                ranked[rankedSize++] = ((long) (Integer.MAX_VALUE - (end - start)) << 32) | candidate;
+            }
+            start = end;
+        }
+        Arrays.sort(ranked, 0, rankedSize);
+        int[] result = new int[Math.min(rankedSize, MAX_SUGGESTIONS)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (int) ranked[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,163 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.UserDoesNotExistException;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.storage.EventStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.index.FriendGraph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Лента действий друзей. Для каждого читающего пользователя в памяти хранится ограниченная
+ * лента последних событий его друзей: она строится из базы при первом запросе, а новые события
+ * раскладываются по уже построенным лентам подписчиков автора. События пользователей, у которых
+ * подписчиков больше {@code fanoutLimit}, не раскладываются, а хранятся в их собственной ленте
+ * и подмешиваются при чтении.
+ */
+@Service
+public class FriendsFeedService {
+
+    private static final Comparator<Event> NEWEST_FIRST = Comparator.comparingLong(Event::getTimeAdd)
+            .thenComparingLong(Event::getId)
+            .reversed();
+
+    private final EventStorage eventStorage;
+    private final UserStorage userStorage;
+    private final FriendGraph friendGraph;
+    private final EventWriter eventWriter;
+    private final int capacity;
+    private final int fanoutLimit;
+    private final Cache<Long, Timeline> timelines;
+    private final Map<Long, Timeline> celebrityTimelines = new ConcurrentHashMap<>();
+
+    public FriendsFeedService(EventStorage eventStorage, @Qualifier("userDbStorage") UserStorage userStorage,
+                              FriendGraph friendGraph, EventWriter eventWriter,
+                              @Value("${filmorate.feed.friends.capacity}") int capacity,
+                              @Value("${filmorate.feed.friends.fanout-limit}") int fanoutLimit,
+                              @Value("${filmorate.feed.friends.max-timelines}") long maxTimelines) {
+        this.eventStorage = eventStorage;
+        this.userStorage = userStorage;
+        this.friendGraph = friendGraph;
+        this.eventWriter = eventWriter;
+        this.capacity = capacity;
+        this.fanoutLimit = fanoutLimit;
+        this.timelines = CacheBuilder.newBuilder()
+                .maximumSize(maxTimelines)
+                .build();
+    }
+
+    public void publish(Event event) {
+        long authorId = event.getUserId();
+        if (friendGraph.getFollowersCount(authorId) > fanoutLimit) {
+            celebrityTimelines.computeIfAbsent(authorId, id -> new Timeline(capacity)).add(event);
+            return;
+        }
+        for (int followerId : friendGraph.getFollowers(authorId)) {
+            Timeline timeline = timelines.getIfPresent((long) followerId);
+            if (timeline != null) {
+                timeline.add(event);
+            }
+        }
+    }
+
+    public List<Event> getFriendsFeed(long userId, int limit) {
+        Timeline timeline = timelines.getIfPresent(userId);
+        if (timeline == null) {
+            timeline = buildTimeline(userId);
+        }
+        eventWriter.flush();
+        List<Event> events = timeline.snapshot();
+        for (int friendId : friendGraph.getFriends(userId)) {
+            Timeline celebrityTimeline = celebrityTimelines.get((long) friendId);
+            if (celebrityTimeline != null) {
+                events.addAll(celebrityTimeline.snapshot());
+            }
+        }
+        Set<Long> seenIds = new HashSet<>();
+        return events.stream()
+                .filter(event -> event.getId() != 0 && friendGraph.isFriend(userId, event.getUserId()))
+                .sorted(NEWEST_FIRST)
+                .filter(event -> seenIds.add(event.getId()))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Сбрасывает ленту пользователя после изменения списка его друзей.
+     */
+    public void friendsChanged(long userId) {
+        timelines.invalidate(userId);
+    }
+
+    public void userRemoved(long userId) {
+        timelines.invalidate(userId);
+        celebrityTimelines.remove(userId);
+    }
+
+    /**
+     * Лента регистрируется до чтения из базы, а запись событий дожидается окончания загрузки,
+     * поэтому события, пришедшие во время загрузки, не теряются. Повторы отсекаются по id при чтении.
+     */
+    private Timeline buildTimeline(long userId) {
+        if (!userStorage.userExists(userId)) {
+            throw new UserDoesNotExistException();
+        }
+        Timeline timeline = new Timeline(capacity);
+        synchronized (timeline) {
+            Timeline existing = timelines.asMap().putIfAbsent(userId, timeline);
+            if (existing != null) {
+                return existing;
+            }
+            eventWriter.flush();
+            List<Event> events = eventStorage.findFriendsEvents(userId, capacity);
+            Collections.reverse(events);
+            events.forEach(timeline::add);
+        }
+        return timeline;
+    }
+
+    /**
+     * Кольцевой буфер последних событий: при переполнении вытесняется самое старое.
+     */
+    private static class Timeline {
+
+        private final Event[] events;
+        private int head;
+        private int size;
+
+        Timeline(int capacity) {
+            this.events = new Event[capacity];
+        }
+
+        synchronized void add(Event event) {
+            events[(head + size) % events.length] = event;
+            if (size < events.length) {
+                size++;
+            } else {
+                head = (head + 1) % events.length;
+            }
+        }
+
+        synchronized List<Event> snapshot() {
+            List<Event> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                result.add(events[(head + i) % events.length]);
+            }
+            return result;
+        }
+    }
+}
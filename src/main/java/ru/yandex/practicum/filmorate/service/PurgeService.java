@@ -0,0 +1,195 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.FilmDoesNotExistException;
+import ru.yandex.practicum.filmorate.exception.PurgeJobDoesNotExistException;
+import ru.yandex.practicum.filmorate.exception.UserDoesNotExistException;
+import ru.yandex.practicum.filmorate.model.PurgeJob;
+import ru.yandex.practicum.filmorate.model.PurgeStatus;
+import ru.yandex.practicum.filmorate.model.PurgeTarget;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Фоновое удаление пользователей и фильмов. Зависимые строки удаляются порциями по {@code chunkSize}
+ * в отдельных коротких транзакциях с паузой {@code pauseMs} между порциями, после чего сама запись
+ * удаляется уже без тяжёлого каскада. Задачи выполняются по очереди в одном потоке,
+ * ход выполнения доступен по id задачи. Завершённые задачи хранятся {@code finishedJobTtlMs},
+ * после чего удаляются из памяти. При остановке приложения задачи, которые так и не начались,
+ * помечаются проваленными.
+ */
+@Slf4j
+@Service
+public class PurgeService {
+
+    private final UserStorage userStorage;
+    private final FilmStorage filmStorage;
+    private final UserService userService;
+    private final FilmService filmService;
+    private final int chunkSize;
+    private final long pauseMs;
+    private final long finishedJobTtlMs;
+    private final Map<Long, PurgeJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicLong nextJobId = new AtomicLong();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "purge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public PurgeService(@Qualifier("userDbStorage") UserStorage userStorage,
+                        @Qualifier("filmDbStorage") FilmStorage filmStorage,
+                        UserService userService, FilmService filmService,
+                        @Value("${filmorate.purge.chunk-size}") int chunkSize,
+                        @Value("${filmorate.purge.pause-ms}") long pauseMs,
+                        @Value("${filmorate.purge.finished-job-ttl-ms}") long finishedJobTtlMs) {
+        this.userStorage = userStorage;
+        this.filmStorage = filmStorage;
+        this.userService = userService;
+        this.filmService = filmService;
+        this.chunkSize = chunkSize;
+        this.pauseMs = pauseMs;
+        this.finishedJobTtlMs = finishedJobTtlMs;
+    }
+
+    public PurgeJob purgeUsers(List<Long> userIds) {
+        return submit(PurgeTarget.USER, userIds);
+    }
+
+    public PurgeJob purgeFilms(List<Long> filmIds) {
+        return submit(PurgeTarget.FILM, filmIds);
+    }
+
+    public PurgeJob getJob(long jobId) {
+        PurgeJob job = jobs.get(jobId);
+        if (job == null) {
+            log.warn("Задача удаления с id {} не найдена", jobId);
+            throw new PurgeJobDoesNotExistException();
+        }
+        return job;
+    }
+
+    /**
+     * Удаляет из памяти задачи, завершённые раньше чем {@code finishedJobTtlMs} назад.
+     */
+    @Scheduled(fixedDelayString = "${filmorate.purge.finished-job-ttl-ms}")
+    public void evictFinishedJobs() {
+        long expiredBefore = System.currentTimeMillis() - finishedJobTtlMs;
+        int before = jobs.size();
+        jobs.values().removeIf(job -> job.getFinishedAt() != null && job.getFinishedAt() <= expiredBefore);
+        if (jobs.size() < before) {
+            log.info("Удалено завершённых задач удаления: {}", before - jobs.size());
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+        int cancelled = 0;
+        for (PurgeJob job : jobs.values()) {
+            synchronized (job) {
+                if (job.getStatus() == PurgeStatus.QUEUED) {
+                    finish(job, PurgeStatus.FAILED);
+                    cancelled++;
+                }
+            }
+        }
+        if (cancelled > 0) {
+            log.warn("Приложение остановлено, не начатых задач удаления: {}", cancelled);
+        }
+    }
+
+    private PurgeJob submit(PurgeTarget target, List<Long> ids) {
+        PurgeJob job = new PurgeJob(nextJobId.incrementAndGet(), target, ids.size());
+        jobs.put(job.getId(), job);
+        List<Long> idsToPurge = new ArrayList<>(ids);
+        executor.execute(() -> run(job, idsToPurge));
+        log.info("Создана задача удаления {} с id {}, записей: {}", target, job.getId(), ids.size());
+        return job;
+    }
+
+    private void run(PurgeJob job, List<Long> ids) {
+        synchronized (job) {
+            if (job.getStatus() != PurgeStatus.QUEUED) {
+                return;
+            }
+            job.setStatus(PurgeStatus.RUNNING);
+        }
+        try {
+            for (Long id : ids) {
+                if (job.getTarget() == PurgeTarget.USER) {
+                    purgeUser(job, id);
+                } else {
+                    purgeFilm(job, id);
+                }
+                job.setProcessed(job.getProcessed() + 1);
+            }
+            finish(job, PurgeStatus.DONE);
+            log.info("Задача удаления с id {} выполнена, удалено строк: {}", job.getId(), job.getDeletedRows());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finish(job, PurgeStatus.FAILED);
+            log.warn("Задача удаления с id {} прервана", job.getId());
+        } catch (RuntimeException e) {
+            finish(job, PurgeStatus.FAILED);
+            log.error("Задача удаления с id {} завершилась с ошибкой", job.getId(), e);
+        }
+    }
+
+    private static void finish(PurgeJob job, PurgeStatus status) {
+        job.setFinishedAt(System.currentTimeMillis());
+        job.setStatus(status);
+    }
+
+    private void purgeUser(PurgeJob job, long userId) throws InterruptedException {
+        if (!userStorage.userExists(userId)) {
+            job.getMissingIds().add(userId);
+            return;
+        }
+        purgeDependents(job, () -> userStorage.purgeUserDependents(userId, chunkSize));
+        try {
+            userService.deleteUser(userId);
+            job.setDeletedRows(job.getDeletedRows() + 1);
+        } catch (UserDoesNotExistException e) {
+            job.getMissingIds().add(userId);
+        }
+    }
+
+    private void purgeFilm(PurgeJob job, long filmId) throws InterruptedException {
+        if (!filmStorage.filmExists(filmId)) {
+            job.getMissingIds().add(filmId);
+            return;
+        }
+        purgeDependents(job, () -> filmStorage.purgeFilmDependents(filmId, chunkSize));
+        try {
+            filmService.deleteFilm(filmId);
+            job.setDeletedRows(job.getDeletedRows() + 1);
+        } catch (FilmDoesNotExistException e) {
+            job.getMissingIds().add(filmId);
+        }
+    }
+
+    private void purgeDependents(PurgeJob job, IntSupplier chunk) throws InterruptedException {
+        int deleted;
+        while ((deleted = chunk.getAsInt()) > 0) {
+            job.setDeletedRows(job.getDeletedRows() + deleted);
+            if (pauseMs > 0) {
+                Thread.sleep(pauseMs);
+            }
+        }
+    }
+}
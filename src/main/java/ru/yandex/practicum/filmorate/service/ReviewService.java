@@ -7,6 +7,7 @@ import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.EventOperation;
 import ru.yandex.practicum.filmorate.model.EventType;
 import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.ReviewVote;
 import ru.yandex.practicum.filmorate.storage.ReviewStorage;
 
 import java.util.List;
@@ -17,11 +18,13 @@ public class ReviewService {
 
     private final ReviewStorage reviewStorage;
     private final EventService eventService;
+    private final ReviewVoteBuffer voteBuffer;
 
     @Autowired
-    public ReviewService(ReviewStorage reviewStorage, EventService eventService) {
+    public ReviewService(ReviewStorage reviewStorage, EventService eventService, ReviewVoteBuffer voteBuffer) {
         this.reviewStorage = reviewStorage;
         this.eventService = eventService;
+        this.voteBuffer = voteBuffer;
     }
 
     public Review create(Review review) {
@@ -53,19 +56,39 @@ public class ReviewService {
         return reviewStorage.getReviewsOfFilm(filmId, count);
     }
 
+    public List<Review> getReviewsOfFilm(long filmId, long afterUseful, long afterReviewId, int count) {
+        return reviewStorage.getReviewsOfFilm(filmId, afterUseful, afterReviewId, count);
+    }
+
     public void addLike(long reviewId, long userId) {
-        reviewStorage.addLike(reviewId, userId);
+        if (voteBuffer.isBuffered()) {
+            voteBuffer.add(new ReviewVote(reviewId, userId, true, EventOperation.ADD));
+        } else {
+            reviewStorage.addLike(reviewId, userId);
+        }
     }
 
     public void addDislike(long reviewId, long userId) {
-        reviewStorage.addDislike(reviewId, userId);
+        if (voteBuffer.isBuffered()) {
+            voteBuffer.add(new ReviewVote(reviewId, userId, false, EventOperation.ADD));
+        } else {
+            reviewStorage.addDislike(reviewId, userId);
+        }
     }
 
     public void deleteLike(long reviewId, long userId) {
-        reviewStorage.deleteLike(reviewId, userId);
+        if (voteBuffer.isBuffered()) {
+            voteBuffer.add(new ReviewVote(reviewId, userId, true, EventOperation.REMOVE));
+        } else {
+            reviewStorage.deleteLike(reviewId, userId);
+        }
     }
 
     public void deleteDislike(long reviewId, long userId) {
-        reviewStorage.deleteDislike(reviewId, userId);
+        if (voteBuffer.isBuffered()) {
+            voteBuffer.add(new ReviewVote(reviewId, userId, false, EventOperation.REMOVE));
+        } else {
+            reviewStorage.deleteDislike(reviewId, userId);
+        }
     }
 }
@@ -0,0 +1,94 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.ReviewDoesNotExistException;
+import ru.yandex.practicum.filmorate.exception.UserDoesNotExistException;
+import ru.yandex.practicum.filmorate.model.ReviewVote;
+import ru.yandex.practicum.filmorate.storage.ReviewStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Буфер голосов за отзывы. В режиме {@code strict} буфер не используется и каждый голос сразу пишется
+ * в базу, так что автор видит свой голос в следующем же запросе. В режиме {@code buffered} голоса
+ * копятся в памяти и раз в {@code flush-interval-ms} записываются одной транзакцией. Для каждой пары
+ * (отзыв, пользователь) хранится только последняя операция: «поставил — снял» превращается в одно снятие,
+ * которое ничего не меняет, если голос так и не попал в базу. Существование отзыва и пользователя
+ * проверяется при постановке голоса в буфер по первичному ключу, поэтому на несуществующие отзыв
+ * или пользователя клиент, как и в режиме {@code strict}, получает 404. Голоса за отзывы и от пользователей,
+ * удалённых уже после постановки в буфер, отбрасываются одним запросом при записи. Полезность отзыва
+ * в этом режиме меняется только после записи буфера.
+ */
+@Slf4j
+@Component
+public class ReviewVoteBuffer {
+
+    private static final String STRICT_MODE = "strict";
+    private static final String BUFFERED_MODE = "buffered";
+
+    private final ReviewStorage reviewStorage;
+    private final UserStorage userStorage;
+    private final boolean buffered;
+    private Map<Long, ReviewVote> pendingLikes = new LinkedHashMap<>();
+    private Map<Long, ReviewVote> pendingDislikes = new LinkedHashMap<>();
+
+    public ReviewVoteBuffer(ReviewStorage reviewStorage, @Qualifier("userDbStorage") UserStorage userStorage,
+                            @Value("${filmorate.reviews.votes.consistency}") String consistency) {
+        this.reviewStorage = reviewStorage;
+        this.userStorage = userStorage;
+        if (!STRICT_MODE.equalsIgnoreCase(consistency) && !BUFFERED_MODE.equalsIgnoreCase(consistency)) {
+            throw new IllegalArgumentException("Неизвестный режим записи голосов: " + consistency);
+        }
+        this.buffered = BUFFERED_MODE.equalsIgnoreCase(consistency);
+    }
+
+    public boolean isBuffered() {
+        return buffered;
+    }
+
+    public void add(ReviewVote vote) {
+        if (!reviewStorage.reviewExists(vote.getReviewId())) {
+            log.warn("Отзыв с id {} не найден", vote.getReviewId());
+            throw new ReviewDoesNotExistException();
+        }
+        if (!userStorage.userExists(vote.getUserId())) {
+            log.warn("Пользователь с id {} не найден", vote.getUserId());
+            throw new UserDoesNotExistException();
+        }
+        long key = vote.getReviewId() << 32 | vote.getUserId();
+        synchronized (this) {
+            (vote.isPositive() ? pendingLikes : pendingDislikes).put(key, vote);
+        }
+    }
+
+    @PreDestroy
+    @Scheduled(fixedDelayString = "${filmorate.reviews.votes.flush-interval-ms}")
+    public void flush() {
+        List<ReviewVote> votes;
+        synchronized (this) {
+            if (pendingLikes.isEmpty() && pendingDislikes.isEmpty()) {
+                return;
+            }
+            votes = new ArrayList<>(pendingLikes.size() + pendingDislikes.size());
+            votes.addAll(pendingLikes.values());
+            votes.addAll(pendingDislikes.values());
+            pendingLikes = new LinkedHashMap<>();
+            pendingDislikes = new LinkedHashMap<>();
+        }
+        try {
+            reviewStorage.applyVotes(votes);
+        } catch (DataAccessException e) {
+            log.error("Не удалось записать {} голосов за отзывы", votes.size(), e);
+        }
+    }
+}
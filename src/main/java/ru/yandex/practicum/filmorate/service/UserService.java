@@ -3,56 +3,97 @@ package ru.yandex.practicum.filmorate.service;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.UserDoesNotExistException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 public class UserService {
 
+    public static final int MAX_PAGE_LIMIT = 1000;
+    public static final int DEFAULT_PAGE_LIMIT = 100;
+    private static final int PAGE_SIZE = 500;
+    private static final int MAX_BATCH_SIZE = 1000;
     private final UserStorage userStorage;
     private final FilmService filmService;
     private final EventService eventService;
+    private final FriendsFeedService friendsFeedService;
+    private final FriendSuggestionService friendSuggestionService;
 
 
     @Autowired
     public UserService(@Qualifier("userDbStorage") UserStorage userStorage, FilmService filmService,
-                       EventService eventService) {
+                       EventService eventService, FriendsFeedService friendsFeedService,
+                       FriendSuggestionService friendSuggestionService) {
         this.userStorage = userStorage;
         this.filmService = filmService;
         this.eventService = eventService;
+        this.friendsFeedService = friendsFeedService;
+        this.friendSuggestionService = friendSuggestionService;
     }
 
     public Collection<User> getUsers() {
-        return Collections.unmodifiableCollection(userStorage.getUsers().values());
+        List<User> users = new ArrayList<>();
+        forEachUser(users::add);
+        return Collections.unmodifiableCollection(users);
     }
 
-    public User create(User user) {
-        for (User registeredUser : userStorage.getUsers().values()) {
-            if (registeredUser.getEmail().equals(user.getEmail())) {
-                log.warn("Пользователь с электронной почтой " + user.getEmail()
-                        + " уже зарегистрирован");
-                throw new ValidationException();
+    public List<User> getUsers(long afterId, int limit) {
+        return userStorage.getUsers(afterId, limit);
+    }
+
+    public void forEachUser(Consumer<User> action) {
+        long afterId = 0;
+        List<User> page;
+        do {
+            page = userStorage.getUsers(afterId, PAGE_SIZE);
+            page.forEach(action);
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
             }
+        } while (page.size() == PAGE_SIZE);
+    }
+
+    public User create(User user) {
+        User createdUser;
+        try {
+            createdUser = userStorage.create(user);
+        } catch (DuplicateKeyException e) {
+            log.warn("Пользователь с электронной почтой {} или логином {} уже зарегистрирован", user.getEmail(),
+                    user.getLogin());
+            throw new ValidationException();
         }
         log.info("Добавлен новый пользователь");
-        return userStorage.create(user);
+        return createdUser;
     }
 
     public User update(User user) {
-        if (userStorage.findUserById(user.getId()) == null) {
+        if (!userStorage.userExists(user.getId())) {
             log.warn("Невозможно обновить пользователя");
             throw new UserDoesNotExistException();
         }
+        User updatedUser;
+        try {
+            updatedUser = userStorage.update(user);
+        } catch (DuplicateKeyException e) {
+            log.warn("Электронная почта {} или логин {} уже заняты другим пользователем", user.getEmail(),
+                    user.getLogin());
+            throw new ValidationException();
+        }
         log.info("Пользователь с id {} обновлён", user.getId());
-        return userStorage.update(user);
+        return updatedUser;
     }
 
     public User findUserById(long id) {
@@ -66,6 +107,8 @@ public class UserService {
 
     public void addFriend(long userId, long friendId) {
         userStorage.addFriend(userId, friendId);
+        friendsFeedService.friendsChanged(userId);
+        friendSuggestionService.friendsChanged(userId);
         Event event = new Event(userId, EventType.FRIEND, EventOperation.ADD, friendId);
         eventService.addEvent(event);
         log.info("Пользователи с id {} и {} теперь друзья", userId, friendId);
@@ -73,6 +116,8 @@ public class UserService {
 
     public void removeFromFriends(long userId, long friendId) {
         userStorage.removeFromFriends(userId, friendId);
+        friendsFeedService.friendsChanged(userId);
+        friendSuggestionService.friendsChanged(userId);
         Event event = new Event(userId, EventType.FRIEND, EventOperation.REMOVE, friendId);
         eventService.addEvent(event);
         log.info("Пользователи с id {} и {} теперь не являются друзьями", userId, friendId);
@@ -86,12 +131,39 @@ public class UserService {
         return userStorage.getAllFriends(userId);
     }
 
+    public UserBatch findUsersByIds(List<Long> ids) {
+        if (ids.size() > MAX_BATCH_SIZE) {
+            log.warn("Запрошено {} пользователей, допустимо не больше {}", ids.size(), MAX_BATCH_SIZE);
+            throw new ValidationException();
+        }
+        List<User> users = userStorage.findUsersByIds(ids);
+        Set<Long> foundIds = users.stream().map(User::getId).collect(Collectors.toSet());
+        List<Long> missingIds = ids.stream()
+                .distinct()
+                .filter(id -> !foundIds.contains(id))
+                .collect(Collectors.toList());
+        return new UserBatch(users, missingIds);
+    }
+
+    public List<User> getFriendSuggestions(long userId, int limit) {
+        int[] suggestedIds = friendSuggestionService.getSuggestions(userId);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < suggestedIds.length && i < limit; i++) {
+            ids.add((long) suggestedIds[i]);
+        }
+        return userStorage.findUsersByIds(ids);
+    }
+
     public void deleteUser(long userId) {
         userStorage.deleteUser(userId);
+        friendsFeedService.userRemoved(userId);
+        friendSuggestionService.userRemoved();
     }
 
     public List<Film> getRecommendations(long userId) {
-        findUserById(userId);
+        if (!userStorage.userExists(userId)) {
+            throw new UserDoesNotExistException();
+        }
         return filmService.getRecommendations(userId);
     }
 }
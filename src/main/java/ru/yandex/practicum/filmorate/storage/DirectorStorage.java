@@ -2,7 +2,9 @@ package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.Director;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface DirectorStorage {
     List<Director> getAllDirectors();
@@ -15,5 +17,5 @@ public interface DirectorStorage {
 
     void deleteDirectorById(int id);
 
-    List<Director> getDirectorsByFilmId(long filmId);
+    Map<Long, List<Director>> getDirectorsByFilmIds(Collection<Long> filmIds);
 }
@@ -7,5 +7,11 @@ import java.util.List;
 public interface EventStorage {
     void addEvent(Event event);
 
+    void addEvents(List<Event> events);
+
     List<Event> findUserEvent(Long userId);
+
+    List<Event> findUserEvents(long userId, long afterTimestamp, long afterEventId, int limit);
+
+    List<Event> findFriendsEvents(long userId, int limit);
 }
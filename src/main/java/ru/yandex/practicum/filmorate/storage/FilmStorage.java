@@ -1,30 +1,53 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.Suggestion;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
-    Map<Long, Film> getFilms();
+    List<Film> getFilms(long afterId, int limit);
+
+    void exportFilms(Consumer<Film> action);
 
     Film create(Film film);
 
+    List<Long> createFilms(List<Film> films);
+
     Film update(Film film);
 
     Film findFilmById(long id);
 
+    boolean filmExists(long id);
+
     void addLike(long filmId, long userId);
 
     List<Film> getFilmsByDirectorOrTitle(String query, String director, String title);
 
+    List<Suggestion> getSuggestions(String prefix, int count);
+
 
     void deleteLike(long filmId, long userId);
 
+    List<LikeOperation> applyLikes(Collection<LikeOperation> operations);
+
     void deleteFilm(long filmId);
 
+    /**
+     * Удаляет не больше {@code limit} строк, зависящих от фильма, и возвращает их число.
+     * Ноль означает, что фильм можно удалять без каскада.
+     */
+    int purgeFilmDependents(long filmId, int limit);
+
     List<Film> getRecommendations(long userId);
 
+    List<Film> getSimilarFilms(long filmId, int count);
+
+    List<Film> getMostPopularFilms(int count, Integer genreId, Integer year);
+
     List<Film> getFilmsByDirectorIdSortedByYearOrLikes(int id, String sortBy);
 }
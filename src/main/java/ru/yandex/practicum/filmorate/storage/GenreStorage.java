@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import ru.yandex.practicum.filmorate.model.CacheStats;
 import ru.yandex.practicum.filmorate.model.Genre;
 
 import java.util.Map;
@@ -9,4 +10,8 @@ public interface GenreStorage {
     Map<Integer, Genre> getAllGenres();
 
     Optional<Genre> findGenreById(Integer id);
+
+    void invalidateCache();
+
+    CacheStats getCacheStats();
 }
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import ru.yandex.practicum.filmorate.model.CacheStats;
 import ru.yandex.practicum.filmorate.model.Mpa;
 
 import java.util.Map;
@@ -9,4 +10,8 @@ public interface MpaStorage {
     Map<Integer, Mpa> getAllMpa();
 
     Optional<Mpa> findMpaById(Integer id);
+
+    void invalidateCache();
+
+    CacheStats getCacheStats();
 }
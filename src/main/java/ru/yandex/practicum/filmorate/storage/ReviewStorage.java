@@ -1,7 +1,9 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.ReviewVote;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface ReviewStorage {
@@ -14,8 +16,12 @@ public interface ReviewStorage {
 
     Review findReviewById(long id);
 
+    boolean reviewExists(long id);
+
     List<Review> getReviewsOfFilm(long filmId, int count);
 
+    List<Review> getReviewsOfFilm(long filmId, long afterUseful, long afterReviewId, int count);
+
     void addLike(long reviewId, long userId);
 
     void addDislike(long reviewId, long userId);
@@ -23,4 +29,6 @@ public interface ReviewStorage {
     void deleteLike(long reviewId, long userId);
 
     void deleteDislike(long reviewId, long userId);
+
+    int applyVotes(Collection<ReviewVote> votes);
 }
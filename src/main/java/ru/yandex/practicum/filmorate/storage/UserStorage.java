@@ -2,12 +2,12 @@ package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 
 public interface UserStorage {
 
-    Map<Long, User> getUsers();
+    List<User> getUsers(long afterId, int limit);
 
     User create(User user);
 
@@ -15,6 +15,13 @@ public interface UserStorage {
 
     User findUserById(long id);
 
+    boolean userExists(long id);
+
+    /**
+     * Возвращает найденных пользователей в порядке переданных id, повторы и отсутствующие id пропускаются.
+     */
+    List<User> findUsersByIds(Collection<Long> ids);
+
     void addFriend(long userId, long friendId);
 
     void removeFromFriends(long userId, long friendId);
@@ -24,4 +31,10 @@ public interface UserStorage {
     List<User> getAllFriends(long userId);
 
     void deleteUser(long userId);
+
+    /**
+     * Удаляет не больше {@code limit} строк, зависящих от пользователя, и возвращает их число.
+     * Ноль означает, что пользователя можно удалять без каскада.
+     */
+    int purgeUserDependents(long userId, int limit);
 }
@@ -0,0 +1,93 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.model.CacheStats;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Ограниченный по размеру кэш фильмов по id со сроком жизни записи. Наружу отдаются копии,
+ * чтобы изменения у вызывающего кода не попадали в кэш. Внутри транзакции фильмы не сохраняются,
+ * так как могут содержать незафиксированные изменения, а сброс повторяется после её завершения
+ * с любым исходом. Загруженный фильм не сохраняется и тогда, когда во время загрузки кэш сбрасывали.
+ */
+@Component
+public class FilmCache {
+
+    private final Cache<Long, Film> cache;
+    private final AtomicLong generation = new AtomicLong();
+
+    public FilmCache(@Value("${filmorate.cache.film.capacity}") long capacity,
+                     @Value("${filmorate.cache.film.ttl-seconds}") long ttlSeconds) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(capacity)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    public Film get(long id, LongFunction<Film> loader) {
+        Film film = cache.getIfPresent(id);
+        if (film == null) {
+            long loadGeneration = generation.get();
+            film = loader.apply(id);
+            if (!TransactionSynchronizationManager.isActualTransactionActive()
+                    && generation.get() == loadGeneration) {
+                cache.put(id, film);
+            }
+        }
+        return copyOf(film);
+    }
+
+    public void invalidate(long id) {
+        generation.incrementAndGet();
+        cache.invalidate(id);
+        afterCompletion(() -> cache.invalidate(id));
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+        afterCompletion(cache::invalidateAll);
+    }
+
+    public CacheStats getStats() {
+        com.google.common.cache.CacheStats stats = cache.stats();
+        return new CacheStats("films", cache.size(), stats.hitCount(), stats.missCount());
+    }
+
+    private void afterCompletion(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    generation.incrementAndGet();
+                    action.run();
+                }
+            });
+        }
+    }
+
+    private static Film copyOf(Film film) {
+        Film copy = Film.builder()
+                .id(film.getId())
+                .name(film.getName())
+                .description(film.getDescription())
+                .releaseDate(film.getReleaseDate())
+                .duration(film.getDuration())
+                .mpa(film.getMpa())
+                .build();
+        copy.getDirectors().addAll(film.getDirectors());
+        copy.getLikes().addAll(film.getLikes());
+        copy.getGenres().addAll(film.getGenres());
+        return copy;
+    }
+}
@@ -0,0 +1,86 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import ru.yandex.practicum.filmorate.model.CacheStats;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Кэш небольшого неизменяемого справочника. Все записи загружаются целиком одним запросом,
+ * при промахе запись дочитывается по id. Содержимое хранится в неизменяемой карте,
+ * которая при изменении заменяется новой копией, поэтому чтение не требует блокировок.
+ */
+public class ReferenceCache<V> {
+
+    private final String name;
+    private final Supplier<List<V>> loader;
+    private final Function<Integer, Optional<V>> singleLoader;
+    private final ToIntFunction<V> idExtractor;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private volatile Map<Integer, V> entries;
+
+    public ReferenceCache(String name, Supplier<List<V>> loader, Function<Integer, Optional<V>> singleLoader,
+                          ToIntFunction<V> idExtractor) {
+        this.name = name;
+        this.loader = loader;
+        this.singleLoader = singleLoader;
+        this.idExtractor = idExtractor;
+    }
+
+    public Map<Integer, V> getAll() {
+        Map<Integer, V> current = entries;
+        if (current == null) {
+            missCount.incrementAndGet();
+            return load();
+        }
+        hitCount.incrementAndGet();
+        return current;
+    }
+
+    public Optional<V> get(int id) {
+        Map<Integer, V> current = entries;
+        if (current == null) {
+            current = load();
+        }
+        V value = current.get(id);
+        if (value != null) {
+            hitCount.incrementAndGet();
+            return Optional.of(value);
+        }
+        missCount.incrementAndGet();
+        Optional<V> loaded = singleLoader.apply(id);
+        loaded.ifPresent(this::put);
+        return loaded;
+    }
+
+    public synchronized Map<Integer, V> load() {
+        Map<Integer, V> loaded = new TreeMap<>();
+        for (V value : loader.get()) {
+            loaded.put(idExtractor.applyAsInt(value), value);
+        }
+        entries = Collections.unmodifiableMap(loaded);
+        return entries;
+    }
+
+    public void invalidate() {
+        entries = null;
+    }
+
+    public CacheStats getStats() {
+        Map<Integer, V> current = entries;
+        return new CacheStats(name, current == null ? 0 : current.size(), hitCount.get(), missCount.get());
+    }
+
+    private synchronized void put(V value) {
+        if (entries == null) {
+            return;
+        }
+        Map<Integer, V> updated = new TreeMap<>(entries);
+        updated.put(idExtractor.applyAsInt(value), value);
+        entries = Collections.unmodifiableMap(updated);
+    }
+}
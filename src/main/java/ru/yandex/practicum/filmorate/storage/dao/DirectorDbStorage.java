@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.storage.dao;
 
+import com.google.common.collect.Lists;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -9,20 +10,25 @@ import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.DirectorNotFoundException;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.storage.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.index.FilmSearchIndex;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
 
 @Component
 @Slf4j
 public class DirectorDbStorage implements DirectorStorage {
     private final JdbcTemplate jdbcTemplate;
+    private final FilmSearchIndex searchIndex;
+    private final FilmCache filmCache;
 
-    public DirectorDbStorage(JdbcTemplate jdbcTemplate) {
+    public DirectorDbStorage(JdbcTemplate jdbcTemplate, FilmSearchIndex searchIndex, FilmCache filmCache) {
         this.jdbcTemplate = jdbcTemplate;
+        this.searchIndex = searchIndex;
+        this.filmCache = filmCache;
     }
 
     public List<Director> getAllDirectors() {
@@ -49,6 +55,7 @@ public class DirectorDbStorage implements DirectorStorage {
             return ps;
         }, keyHolder);
         director.setId((Objects.requireNonNull(keyHolder.getKey()).intValue()));
+        searchIndex.indexDirector(director.getId(), director.getName());
         return director;
     }
 
@@ -57,6 +64,8 @@ public class DirectorDbStorage implements DirectorStorage {
             Director dir = getDirectorById(director.getId());
             String sql = "UPDATE DIRECTOR SET DIRECTOR_NAME = ? WHERE DIRECTOR_ID = ?";
             jdbcTemplate.update(sql, director.getName(), director.getId());
+            searchIndex.indexDirector(director.getId(), director.getName());
+            filmCache.invalidateAll();
             return director;
         } catch (EmptyResultDataAccessException e) {
             throw new DirectorNotFoundException();
@@ -67,16 +76,25 @@ public class DirectorDbStorage implements DirectorStorage {
         try {
             String sql = "DELETE DIRECTOR WHERE DIRECTOR_ID = ?";
             jdbcTemplate.update(sql, id);
+            searchIndex.removeDirector(id);
+            filmCache.invalidateAll();
         } catch (EmptyResultDataAccessException e) {
             throw new DirectorNotFoundException();
         }
     }
 
-    public List<Director> getDirectorsByFilmId(long filmId) {
-        String queryForDirectors = "SELECT d.DIRECTOR_ID, d.DIRECTOR_NAME " +
-                "FROM FILM_DIRECTOR fd JOIN DIRECTOR d ON fd.DIRECTOR_ID = d.DIRECTOR_ID " +
-                "WHERE fd.FILM_ID = ?";
-        return jdbcTemplate.query(queryForDirectors, this::mapRowToDirector, filmId);
+    public Map<Long, List<Director>> getDirectorsByFilmIds(Collection<Long> filmIds) {
+        Map<Long, List<Director>> directors = new HashMap<>();
+        for (List<Long> chunk : Lists.partition(new ArrayList<>(filmIds), SqlUtils.IN_CHUNK_SIZE)) {
+            String queryForDirectors = "SELECT fd.FILM_ID, d.DIRECTOR_ID, d.DIRECTOR_NAME " +
+                    "FROM FILM_DIRECTOR fd JOIN DIRECTOR d ON fd.DIRECTOR_ID = d.DIRECTOR_ID " +
+                    "WHERE fd.FILM_ID IN " + SqlUtils.inClause(chunk.size());
+            jdbcTemplate.query(queryForDirectors, rs -> {
+                directors.computeIfAbsent(rs.getLong("FILM_ID"), id -> new ArrayList<>())
+                        .add(mapRowToDirector(rs, rs.getRow()));
+            }, chunk.toArray());
+        }
+        return directors;
     }
 
     private Director mapRowToDirector(ResultSet rs, int rowNum) throws SQLException {
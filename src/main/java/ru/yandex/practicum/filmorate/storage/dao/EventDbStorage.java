@@ -2,22 +2,34 @@ package ru.yandex.practicum.filmorate.storage.dao;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exception.UserDoesNotExistException;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.EventOperation;
 import ru.yandex.practicum.filmorate.model.EventType;
 import ru.yandex.practicum.filmorate.storage.EventStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 
 @Slf4j
 @Component
 public class EventDbStorage implements EventStorage {
+    private static final String QUERY_TO_ADD_EVENT = "INSERT INTO USER_EVENT " +
+            "(TIME_ADD, USER_ID, EVENT_TYPE_ID, EVENT_OPERATION_ID, ENTITY_ID) VALUES (?, ?, ?, ?, ?)";
+
     private final JdbcTemplate jdbcTemplate;
     private final UserStorage userStorage;
 
@@ -28,26 +40,81 @@ public class EventDbStorage implements EventStorage {
 
     @Override
     public void addEvent(Event event) {
-        String sql = "INSERT INTO USER_EVENT (TIME_ADD, USER_ID, EVENT_TYPE_ID, EVENT_OPERATION_ID, ENTITY_ID) " +
-                " VALUES(? , ? , ? , ? , ?)";
-        jdbcTemplate.update(sql,
-                event.getTimeAdd(),
-                event.getUserId(),
-                event.getEventType().getId(),
-                event.getEventOperation().getId(),
-                event.getEntityId()
-        );
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(QUERY_TO_ADD_EVENT, new String[]{"event_id"});
+            setEventParameters(ps, event);
+            return ps;
+        }, keyHolder);
+        event.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
+    }
+
+    @Override
+    @Transactional
+    public void addEvents(List<Event> events) {
+        List<Long> ids = jdbcTemplate.execute((ConnectionCallback<List<Long>>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(QUERY_TO_ADD_EVENT, new String[]{"event_id"})) {
+                for (Event event : events) {
+                    setEventParameters(ps, event);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                List<Long> keys = new ArrayList<>(events.size());
+                try (ResultSet rs = ps.getGeneratedKeys()) {
+                    while (rs.next()) {
+                        keys.add(rs.getLong(1));
+                    }
+                }
+                if (keys.size() != events.size()) {
+                    throw new IncorrectResultSizeDataAccessException("База вернула " + keys.size() +
+                            " сгенерированных id на пакет из " + events.size() + " событий",
+                            events.size(), keys.size());
+                }
+                return keys;
+            }
+        });
+        for (int i = 0; i < events.size(); i++) {
+            events.get(i).setId(Objects.requireNonNull(ids).get(i));
+        }
     }
 
     @Override
     public List<Event> findUserEvent(Long userId) {
-        userStorage.findUserById(userId);
-        String sql = "SELECT UE.EVENT_ID, UE.TIME_ADD, UE.USER_ID,UE.ENTITY_ID, ET.NAME AS EVENT_TYPE_NAME, EO.NAME AS EVENT_OPERATION_NAME " +
-                "FROM USER_EVENT AS UE LEFT JOIN EVENT_TYPE AS ET ON UE.EVENT_TYPE_ID = ET.EVENT_TYPE_ID " +
-                "LEFT JOIN EVENT_OPERATION AS EO " +
-                "ON UE.EVENT_OPERATION_ID = EO.EVENT_OPERATION_ID " +
-                "WHERE UE.USER_ID=?";
-        return jdbcTemplate.query(sql, this::makeEvent, userId);
+        String sql = "SELECT * FROM USER_EVENT WHERE USER_ID = ? ORDER BY TIME_ADD, EVENT_ID";
+        List<Event> events = jdbcTemplate.query(sql, this::makeEvent, userId);
+        if (events.isEmpty() && !userStorage.userExists(userId)) {
+            throw new UserDoesNotExistException();
+        }
+        return events;
+    }
+
+    @Override
+    public List<Event> findUserEvents(long userId, long afterTimestamp, long afterEventId, int limit) {
+        String sql = "SELECT * FROM USER_EVENT WHERE USER_ID = ? " +
+                "AND (TIME_ADD > ? OR (TIME_ADD = ? AND EVENT_ID > ?)) " +
+                "ORDER BY TIME_ADD, EVENT_ID LIMIT ?";
+        List<Event> events = jdbcTemplate.query(sql, this::makeEvent, userId, afterTimestamp, afterTimestamp,
+                afterEventId, limit);
+        if (events.isEmpty() && !userStorage.userExists(userId)) {
+            throw new UserDoesNotExistException();
+        }
+        return events;
+    }
+
+    @Override
+    public List<Event> findFriendsEvents(long userId, int limit) {
+        String sql = "SELECT * FROM USER_EVENT WHERE USER_ID IN " +
+                "(SELECT USER_SECOND_ID FROM FRIENDSHIP WHERE USER_FIRST_ID = ?) " +
+                "ORDER BY TIME_ADD DESC, EVENT_ID DESC LIMIT ?";
+        return jdbcTemplate.query(sql, this::makeEvent, userId, limit);
+    }
+
+    private void setEventParameters(PreparedStatement ps, Event event) throws SQLException {
+        ps.setLong(1, event.getTimeAdd());
+        ps.setLong(2, event.getUserId());
+        ps.setInt(3, event.getEventType().getId());
+        ps.setInt(4, event.getEventOperation().getId());
+        ps.setLong(5, event.getEntityId());
     }
 
     private Event makeEvent(ResultSet rs, int i) throws SQLException {
@@ -55,8 +122,8 @@ public class EventDbStorage implements EventStorage {
         event.setId(rs.getLong("event_id"));
         event.setTimeAdd(rs.getLong("time_add"));
         event.setUserId(rs.getLong("user_id"));
-        event.setEventType(EventType.valueOf(rs.getString("event_type_name")));
-        event.setEventOperation(EventOperation.valueOf(rs.getString("event_operation_name")));
+        event.setEventType(EventType.fromId(rs.getInt("event_type_id")));
+        event.setEventOperation(EventOperation.fromId(rs.getInt("event_operation_id")));
         event.setEntityId(rs.getLong("entity_id"));
         return event;
     }
@@ -1,60 +1,117 @@
 package ru.yandex.practicum.filmorate.storage.dao;
 
+import com.google.common.collect.Lists;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.DirectorNotFoundException;
 import ru.yandex.practicum.filmorate.exception.FilmDoesNotExistException;
+import ru.yandex.practicum.filmorate.exception.UserDoesNotExistException;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.storage.DirectorStorage;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.index.LikeGraph;
+import ru.yandex.practicum.filmorate.storage.index.RecommendationModel;
 
+import javax.annotation.PostConstruct;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component("filmDbStorage")
 public class FilmDbStorage implements FilmStorage {
 
+    private static final String QUERY_TO_CHANGE_LIKES_COUNT = "UPDATE FILM SET LIKES_COUNT = LIKES_COUNT + ? " +
+            "WHERE FILM_ID = ?;";
+    private static final String QUERY_TO_CHECK_FILM_EXISTS = "SELECT EXISTS (SELECT 1 FROM FILM WHERE FILM_ID = ?);";
+    private static final String QUERY_TO_ADD_FILM_GENRE = "INSERT INTO FILM_GENRE (FILM_ID, GENRE_ID) VALUES (?, ?);";
+    private static final String QUERY_TO_DELETE_FILM_GENRE = "DELETE FROM FILM_GENRE WHERE FILM_ID = ? " +
+            "AND GENRE_ID = ?;";
+    private static final String QUERY_TO_ADD_FILM_DIRECTOR = "INSERT INTO FILM_DIRECTOR (FILM_ID, DIRECTOR_ID) " +
+            "VALUES (?, ?);";
+    private static final String QUERY_TO_DELETE_FILM_DIRECTOR = "DELETE FROM FILM_DIRECTOR WHERE FILM_ID = ? " +
+            "AND DIRECTOR_ID = ?;";
+    private static final int EXPORT_FETCH_SIZE = 500;
     private final JdbcTemplate jdbcTemplate;
     private final UserStorage userStorage;
     private final DirectorStorage directorStorage;
+    private final GenreStorage genreStorage;
+    private final MpaStorage mpaStorage;
+    private final FilmSearchIndex searchIndex;
+    private final LikeGraph likeGraph;
+    private final RecommendationModel recommendationModel;
+    private final FilmCache filmCache;
 
     @Autowired
     public FilmDbStorage(JdbcTemplate jdbcTemplate, @Qualifier("userDbStorage") UserStorage userStorage,
-                         DirectorDbStorage directorStorage) {
+                         DirectorDbStorage directorStorage, GenreStorage genreStorage, MpaStorage mpaStorage,
+                         FilmSearchIndex searchIndex, LikeGraph likeGraph, RecommendationModel recommendationModel,
+                         FilmCache filmCache) {
         this.jdbcTemplate = jdbcTemplate;
         this.userStorage = userStorage;
         this.directorStorage = directorStorage;
+        this.genreStorage = genreStorage;
+        this.mpaStorage = mpaStorage;
+        this.searchIndex = searchIndex;
+        this.likeGraph = likeGraph;
+        this.recommendationModel = recommendationModel;
+        this.filmCache = filmCache;
     }
 
     @Override
-    public Map<Long, Film> getFilms() {
-        Map<Long, Film> films = new HashMap<>();
-        String sqlQuery = "SELECT F.*, R.RATING_NAME FROM FILM AS F JOIN RATING AS R ON F.RATING_ID = R.RATING_ID ";
-        List<Film> filmsFromDb = jdbcTemplate.query(sqlQuery, this::mapRowToFilm);
-        for (Film film : filmsFromDb) {
-            films.put(film.getId(), film);
-        }
-        return films;
+    public List<Film> getFilms(long afterId, int limit) {
+        String sqlQuery = "SELECT * FROM FILM WHERE FILM_ID > ? ORDER BY FILM_ID LIMIT ?";
+        return fillAssociations(jdbcTemplate.query(sqlQuery, this::mapRowToFilm, afterId, limit));
+    }
+
+    @Override
+    public void exportFilms(Consumer<Film> action) {
+        String sqlQuery = "SELECT * FROM FILM ORDER BY FILM_ID";
+        List<Film> chunk = new ArrayList<>(EXPORT_FETCH_SIZE);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sqlQuery, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(EXPORT_FETCH_SIZE);
+            return ps;
+        }, rs -> {
+            chunk.add(mapRowToFilm(rs, rs.getRow()));
+            if (chunk.size() == EXPORT_FETCH_SIZE) {
+                fillAssociations(chunk).forEach(action);
+                chunk.clear();
+            }
+        });
+        fillAssociations(chunk).forEach(action);
     }
 
     @Override
+    @Transactional
     public Film create(Film film) {
         KeyHolder keyHolder = new GeneratedKeyHolder();
         String sqlQuery = "INSERT INTO FILM (NAME, DESCRIPTION, RELEASE_DATE, DURATION, RATING_ID) " +
                 "VALUES (?, ?, ?, ?, ?);";
-        String queryForFilmGenre = "INSERT INTO FILM_GENRE (FILM_ID, GENRE_ID) VALUES (?, ?);";
         jdbcTemplate.update(connection -> {
             PreparedStatement ps =
                     connection.prepareStatement(sqlQuery, new String[]{"film_id"});
@@ -67,74 +124,128 @@ public class FilmDbStorage implements FilmStorage {
         }, keyHolder);
         film.setId(Objects.requireNonNull(keyHolder.getKey()).longValue());
 
-        if (!film.getGenres().isEmpty()) {
-            for (Genre genre : film.getGenres()) {
-                jdbcTemplate.update(queryForFilmGenre, film.getId(), genre.getId());
+        batchUpdateAssociations(QUERY_TO_ADD_FILM_GENRE, film.getId(), genreIdsOf(film));
+        batchUpdateAssociations(QUERY_TO_ADD_FILM_DIRECTOR, film.getId(), directorIdsOf(film));
+        Film createdFilm = findFilmById(film.getId());
+        SqlUtils.afterCommit(() -> indexFilm(createdFilm));
+        return createdFilm;
+    }
+
+    @Override
+    @Transactional
+    public List<Long> createFilms(List<Film> films) {
+        String sqlQuery = "INSERT INTO FILM (NAME, DESCRIPTION, RELEASE_DATE, DURATION, RATING_ID) " +
+                "VALUES (?, ?, ?, ?, ?);";
+        List<Long> ids = jdbcTemplate.execute((ConnectionCallback<List<Long>>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(sqlQuery, new String[]{"film_id"})) {
+                for (Film film : films) {
+                    ps.setString(1, film.getName());
+                    ps.setString(2, film.getDescription());
+                    ps.setDate(3, Date.valueOf(film.getReleaseDate()));
+                    ps.setLong(4, film.getDuration());
+                    ps.setInt(5, film.getMpa().getId());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                List<Long> keys = new ArrayList<>(films.size());
+                try (ResultSet rs = ps.getGeneratedKeys()) {
+                    while (rs.next()) {
+                        keys.add(rs.getLong(1));
+                    }
+                }
+                if (keys.size() != films.size()) {
+                    throw new IncorrectResultSizeDataAccessException("База вернула " + keys.size() +
+                            " сгенерированных id на пакет из " + films.size() + " фильмов", films.size(), keys.size());
+                }
+                return keys;
             }
-        }
-        String queryForFilmDirector = "INSERT into FILM_DIRECTOR (film_id, DIRECTOR_ID) VALUES (?, ?)";
-        if (!film.getDirectors().isEmpty()) {
-            for (Director director : film.getDirectors()) {
-                jdbcTemplate.update(queryForFilmDirector, film.getId(), director.getId());
+        });
+        List<Object[]> genreArgs = new ArrayList<>();
+        List<Object[]> directorArgs = new ArrayList<>();
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            film.setId(Objects.requireNonNull(ids).get(i));
+            for (Integer genreId : genreIdsOf(film)) {
+                genreArgs.add(new Object[]{film.getId(), genreId});
+            }
+            for (Integer directorId : directorIdsOf(film)) {
+                directorArgs.add(new Object[]{film.getId(), directorId});
             }
         }
-        return findFilmById(film.getId());
+        jdbcTemplate.batchUpdate(QUERY_TO_ADD_FILM_GENRE, genreArgs);
+        jdbcTemplate.batchUpdate(QUERY_TO_ADD_FILM_DIRECTOR, directorArgs);
+        SqlUtils.afterCommit(() -> films.forEach(this::indexFilm));
+        return ids;
     }
 
     @Override
+    @Transactional
     public Film update(Film film) {
         String sqlQuery = "UPDATE FILM SET NAME = ?, DESCRIPTION = ?, RELEASE_DATE = ?, RATING_ID = ?, DURATION = ?" +
                 " WHERE FILM_ID = ?;";
-        String queryToDeleteFilmGenres = "DELETE FROM FILM_GENRE WHERE FILM_ID = ?;";
-        String queryForUpdateGenre = "INSERT INTO FILM_GENRE (FILM_ID, GENRE_ID) VALUES (?, ?);";
-
         jdbcTemplate.update(sqlQuery, film.getName(), film.getDescription(), film.getReleaseDate(),
                 film.getMpa().getId(), film.getDuration(), film.getId());
-        jdbcTemplate.update(queryToDeleteFilmGenres, film.getId());
-        if (!film.getGenres().isEmpty()) {
-            for (Genre genre : film.getGenres()) {
-                jdbcTemplate.update(queryForUpdateGenre, film.getId(), genre.getId());
-            }
+
+        Set<Integer> currentGenres = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT GENRE_ID FROM FILM_GENRE WHERE FILM_ID = ?;", Integer.class, film.getId()));
+        updateAssociations(QUERY_TO_ADD_FILM_GENRE, QUERY_TO_DELETE_FILM_GENRE, film.getId(), currentGenres,
+                genreIdsOf(film));
+        Set<Integer> currentDirectors = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT DIRECTOR_ID FROM FILM_DIRECTOR WHERE FILM_ID = ?;", Integer.class, film.getId()));
+        updateAssociations(QUERY_TO_ADD_FILM_DIRECTOR, QUERY_TO_DELETE_FILM_DIRECTOR, film.getId(), currentDirectors,
+                directorIdsOf(film));
+        filmCache.invalidate(film.getId());
+        Film updatedFilm = findFilmById(film.getId());
+        SqlUtils.afterCommit(() -> indexFilm(updatedFilm));
+        return updatedFilm;
+    }
+
+    private void updateAssociations(String insertQuery, String deleteQuery, long filmId, Set<Integer> currentIds,
+                                    Set<Integer> newIds) {
+        Set<Integer> removedIds = new HashSet<>(currentIds);
+        removedIds.removeAll(newIds);
+        Set<Integer> addedIds = new LinkedHashSet<>(newIds);
+        addedIds.removeAll(currentIds);
+        batchUpdateAssociations(deleteQuery, filmId, removedIds);
+        batchUpdateAssociations(insertQuery, filmId, addedIds);
+    }
+
+    private void batchUpdateAssociations(String sqlQuery, long filmId, Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return;
         }
-        String queryForDeleteDirectors = "DELETE FROM FILM_DIRECTOR WHERE FILM_ID = ?";
-        jdbcTemplate.update(queryForDeleteDirectors, film.getId());
-        String queryForFilmDirector = "INSERT into FILM_DIRECTOR (film_id, DIRECTOR_ID) VALUES (?, ?)";
-        if (!film.getDirectors().isEmpty()) {
-            for (Director director : film.getDirectors()) {
-                jdbcTemplate.update(queryForFilmDirector, film.getId(), director.getId());
-            }
+        List<Object[]> batchArgs = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            batchArgs.add(new Object[]{filmId, id});
         }
-        return findFilmById(film.getId());
+        jdbcTemplate.batchUpdate(sqlQuery, batchArgs);
+    }
+
+    private static Set<Integer> genreIdsOf(Film film) {
+        return film.getGenres().stream().map(Genre::getId).collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private static Set<Integer> directorIdsOf(Film film) {
+        return film.getDirectors().stream().map(Director::getId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
     }
 
     @Override
     public Film findFilmById(long id) {
-        String sqlQuery = "SELECT F.*, R.RATING_NAME FROM FILM AS F JOIN RATING AS R ON F.RATING_ID = R.RATING_ID " +
-                " WHERE FILM_ID = ?;";
-        SqlRowSet filmRows = jdbcTemplate.queryForRowSet(sqlQuery, id);
-        if (filmRows.next()) {
-            Film film = Film.builder()
-                    .id(filmRows.getLong("FILM_ID"))
-                    .name(filmRows.getString("NAME"))
-                    .description(filmRows.getString("DESCRIPTION"))
-                    .releaseDate(Objects.requireNonNull(filmRows.getDate("RELEASE_DATE")).toLocalDate())
-                    .duration(filmRows.getInt("DURATION"))
-                    .mpa(new Mpa(filmRows.getInt("RATING_ID"), filmRows.getString("RATING_NAME")))
-                    .build();
-            List<Genre> genresOfFilm = getGenresOfFilm(id);
-            List<Integer> likes = getLikesOfFilm(film.getId());
-            List<Director> directors = directorStorage.getDirectorsByFilmId(film.getId());
-            for (Genre genre : genresOfFilm) {
-                film.getGenres().add(genre);
-            }
-            for (Integer like : likes) {
-                film.getLikes().add(Long.valueOf(like));
-            }
-            for (Director director : directors) {
-                film.getDirectors().add(director);
-            }
+        return filmCache.get(id, this::loadFilmById);
+    }
+
+    @Override
+    public boolean filmExists(long id) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(QUERY_TO_CHECK_FILM_EXISTS, Boolean.class, id));
+    }
+
+    private Film loadFilmById(long id) {
+        String sqlQuery = "SELECT * FROM FILM WHERE FILM_ID = ?;";
+        List<Film> films = fillAssociations(jdbcTemplate.query(sqlQuery, this::mapRowToFilm, id));
+        if (!films.isEmpty()) {
             log.info("Найден фильм с id {}", id);
-            return film;
+            return films.get(0);
         }
         log.warn("Фильм с id {} не найден", id);
         throw new FilmDoesNotExistException();
@@ -145,24 +256,20 @@ public class FilmDbStorage implements FilmStorage {
             directorStorage.getDirectorById(id);
             String sql;
             if (sortBy.equals("year")) {
-                sql = "SELECT f.FILM_ID, f.NAME, f.DESCRIPTION, f.RELEASE_DATE, f.DURATION, f.RATING_ID, " +
-                        "r.RATING_NAME\n FROM FILM f \n" +
-                        "JOIN RATING r ON f.RATING_ID = r.RATING_ID \n" +
+                sql = "SELECT f.FILM_ID, f.NAME, f.DESCRIPTION, f.RELEASE_DATE, f.DURATION, f.RATING_ID " +
+                        "FROM FILM f \n" +
                         "JOIN FILM_DIRECTOR fd ON f.FILM_ID = fd.FILM_ID \n" +
                         "WHERE fd.DIRECTOR_ID = ? " +
                         "ORDER BY RELEASE_DATE ";
-                return jdbcTemplate.query(sql, this::mapRowToFilm, id);
+                return fillAssociations(jdbcTemplate.query(sql, this::mapRowToFilm, id));
             }
             if (sortBy.equals("likes")) {
-                sql = "SELECT f.FILM_ID, f.NAME, f.DESCRIPTION, f.RELEASE_DATE, f.DURATION, f.RATING_ID, " +
-                        "r.RATING_NAME, count(fl.USER_ID) AS likes_quantity FROM FILM f \n" +
-                        "JOIN RATING r ON f.RATING_ID = r.RATING_ID \n" +
+                sql = "SELECT f.FILM_ID, f.NAME, f.DESCRIPTION, f.RELEASE_DATE, f.DURATION, f.RATING_ID " +
+                        "FROM FILM f \n" +
                         "JOIN FILM_DIRECTOR fd ON f.FILM_ID = fd.FILM_ID \n" +
-                        "LEFT JOIN FILM_LIKE fl ON f.FILM_ID = fl.FILM_ID \n" +
                         "where fd.DIRECTOR_ID = ? " +
-                        "GROUP BY f.FILM_ID \n" +
-                        "ORDER BY likes_quantity desc";
-                return jdbcTemplate.query(sql, this::mapRowToFilm, id);
+                        "ORDER BY f.LIKES_COUNT desc";
+                return fillAssociations(jdbcTemplate.query(sql, this::mapRowToFilm, id));
             }
             return new ArrayList<>();
         } catch (EmptyResultDataAccessException e) {
@@ -171,160 +278,319 @@ public class FilmDbStorage implements FilmStorage {
     }
 
     private Film mapRowToFilm(ResultSet rs, int rowNum) throws SQLException {
-        log.info("Film build start>>>>>");
-        Film film = Film.builder()
+        return Film.builder()
                 .id(rs.getLong("FILM_ID"))
                 .name(rs.getString("NAME"))
                 .description(rs.getString("DESCRIPTION"))
                 .releaseDate(rs.getDate("RELEASE_DATE").toLocalDate())
                 .duration(rs.getInt("DURATION"))
-                .mpa(new Mpa(rs.getInt("RATING_ID"), rs.getString("RATING_NAME")))
+                .mpa(resolveMpa(rs.getInt("RATING_ID")))
                 .build();
-        log.info("Film = {}", film);
-        List<Genre> genresOfFilm = getGenresOfFilm(film.getId());
-        List<Integer> likes = getLikesOfFilm(film.getId());
-        List<Director> directors = directorStorage.getDirectorsByFilmId(film.getId());
-        for (Genre genre : genresOfFilm) {
-            film.getGenres().add(genre);
-        }
-        for (Integer like : likes) {
-            film.getLikes().add(Long.valueOf(like));
-        }
-        for (Director director : directors) {
-            film.getDirectors().add(director);
-        }
-        return film;
-    }
-
-    private Genre mapRowToGenre(ResultSet rs, int rowNum) throws SQLException {
-        return new Genre(rs.getInt("GENRE_ID"), rs.getString("GENRE_NAME"));
     }
 
-    private Integer mapRowToLike(ResultSet rs, int rowNum) throws SQLException {
-        return rs.getInt("USER_ID");
+    private Mpa resolveMpa(int mpaId) {
+        Mpa mpa = mpaStorage.getAllMpa().get(mpaId);
+        return mpa != null ? mpa : mpaStorage.findMpaById(mpaId).orElse(new Mpa(mpaId, null));
     }
 
-    private List<Genre> getGenresOfFilm(long filmId) {
-        String queryForFilmGenres = "SELECT FG.FILM_ID, FG.GENRE_ID, G.GENRE_NAME FROM FILM_GENRE FG" +
-                " JOIN GENRE G ON G.GENRE_ID = FG.GENRE_ID WHERE FILM_ID = ?;";
-        return jdbcTemplate.query(queryForFilmGenres, this::mapRowToGenre, filmId);
+    private Genre resolveGenre(int genreId) {
+        Genre genre = genreStorage.getAllGenres().get(genreId);
+        return genre != null ? genre : genreStorage.findGenreById(genreId).orElse(new Genre(genreId, null));
     }
 
-    private List<Integer> getLikesOfFilm(long filmId) {
-        String queryForFilmLikes = "SELECT USER_ID FROM FILM_LIKE WHERE FILM_ID = ?;";
-        return jdbcTemplate.query(queryForFilmLikes, this::mapRowToLike, filmId);
+    private List<Film> fillAssociations(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        Map<Long, Film> filmsById = new HashMap<>();
+        for (Film film : films) {
+            filmsById.put(film.getId(), film);
+        }
+        for (List<Long> chunk : Lists.partition(new ArrayList<>(filmsById.keySet()), SqlUtils.IN_CHUNK_SIZE)) {
+            String inClause = SqlUtils.inClause(chunk.size());
+            String queryForFilmGenres = "SELECT FILM_ID, GENRE_ID FROM FILM_GENRE WHERE FILM_ID IN " + inClause;
+            jdbcTemplate.query(queryForFilmGenres, rs -> {
+                filmsById.get(rs.getLong("FILM_ID")).getGenres().add(resolveGenre(rs.getInt("GENRE_ID")));
+            }, chunk.toArray());
+            directorStorage.getDirectorsByFilmIds(chunk).forEach((filmId, directors) ->
+                    filmsById.get(filmId).getDirectors().addAll(directors));
+        }
+        for (Film film : films) {
+            for (int userId : likeGraph.getLikers(film.getId())) {
+                film.getLikes().add((long) userId);
+            }
+        }
+        return films;
     }
 
     @Override
+    @Transactional
     public void addLike(long filmId, long userId) {
-        Film film = findFilmById(filmId);
-        User user = userStorage.findUserById(userId);
         try {
             String sqlQuery = "INSERT INTO FILM_LIKE (FILM_ID, USER_ID) VALUES (?, ?);";
             jdbcTemplate.update(sqlQuery, filmId, userId);
-        } catch (Exception e) {
+        } catch (DuplicateKeyException e) {
             log.warn("Лайк фильму с id {} от пользователя с id {} уже существует", filmId, userId);
+            return;
+        } catch (DataIntegrityViolationException e) {
+            checkFilmAndUserExist(filmId, userId);
+            throw e;
         }
+        jdbcTemplate.update(QUERY_TO_CHANGE_LIKES_COUNT, 1, filmId);
+        filmCache.invalidate(filmId);
+        SqlUtils.afterCommit(() -> {
+            likeGraph.addLike(filmId, userId);
+            recommendationModel.likeChanged(filmId, userId);
+        });
     }
 
     @Override
+    @Transactional
     public void deleteLike(long filmId, long userId) {
-        Film film = findFilmById(filmId);
-        User user = userStorage.findUserById(userId);
         String sqlQuery = "DELETE FROM FILM_LIKE WHERE FILM_ID = ? AND USER_ID = ?;";
-        jdbcTemplate.update(sqlQuery, filmId, userId);
+        if (jdbcTemplate.update(sqlQuery, filmId, userId) == 0) {
+            checkFilmAndUserExist(filmId, userId);
+            return;
+        }
+        jdbcTemplate.update(QUERY_TO_CHANGE_LIKES_COUNT, -1, filmId);
+        filmCache.invalidate(filmId);
+        SqlUtils.afterCommit(() -> {
+            likeGraph.removeLike(filmId, userId);
+            recommendationModel.likeChanged(filmId, userId);
+        });
     }
 
+    /**
+     * Применяет пачку операций с лайками, по одной на пару (фильм, пользователь): операции с несуществующими
+     * фильмами или пользователями и операции, не меняющие состояние, пропускаются. Что именно изменилось,
+     * решают счётчики строк самих INSERT и DELETE, а не граф в памяти, поэтому граф может отставать
+     * от базы. Возвращает применённые операции.
+     */
     @Override
-    public List<Film> getFilmsByDirectorOrTitle(String query, String director, String title) {
-        log.info("Query = {} director = {} title = {}", query, director, title);
+    @Transactional
+    public List<LikeOperation> applyLikes(Collection<LikeOperation> operations) {
+        Set<Long> existingFilms = SqlUtils.findExistingIds(jdbcTemplate, "FILM", "FILM_ID",
+                operations.stream().map(LikeOperation::getFilmId).collect(Collectors.toSet()));
+        Set<Long> existingUsers = SqlUtils.findExistingIds(jdbcTemplate, "\"USER\"", "USER_ID",
+                operations.stream().map(LikeOperation::getUserId).collect(Collectors.toSet()));
+        List<LikeOperation> additions = new ArrayList<>();
+        List<LikeOperation> removals = new ArrayList<>();
+        for (LikeOperation operation : operations) {
+            if (existingFilms.contains(operation.getFilmId()) && existingUsers.contains(operation.getUserId())) {
+                (operation.getOperation() == EventOperation.ADD ? additions : removals).add(operation);
+            }
+        }
+        List<LikeOperation> applied = new ArrayList<>();
+        collectApplied(additions, jdbcTemplate.batchUpdate("INSERT INTO FILM_LIKE (FILM_ID, USER_ID) " +
+                "SELECT CAST(? AS INTEGER), CAST(? AS INTEGER) FROM DUAL WHERE NOT EXISTS " +
+                "(SELECT 1 FROM FILM_LIKE WHERE FILM_ID = ? AND USER_ID = ?);", additions.stream()
+                .map(operation -> new Object[]{operation.getFilmId(), operation.getUserId(),
+                        operation.getFilmId(), operation.getUserId()})
+                .collect(Collectors.toList())), applied);
+        collectApplied(removals, jdbcTemplate.batchUpdate("DELETE FROM FILM_LIKE WHERE FILM_ID = ? AND USER_ID = ?;",
+                removals.stream()
+                        .map(operation -> new Object[]{operation.getFilmId(), operation.getUserId()})
+                        .collect(Collectors.toList())), applied);
+        Set<Long> changedFilms = applied.stream().map(LikeOperation::getFilmId).collect(Collectors.toSet());
+        jdbcTemplate.batchUpdate("UPDATE FILM SET LIKES_COUNT = (SELECT COUNT(*) FROM FILM_LIKE " +
+                        "WHERE FILM_LIKE.FILM_ID = FILM.FILM_ID) WHERE FILM_ID = ?;",
+                changedFilms.stream().map(filmId -> new Object[]{filmId}).collect(Collectors.toList()));
+        changedFilms.forEach(filmCache::invalidate);
+        SqlUtils.afterCommit(() -> {
+            for (LikeOperation operation : applied) {
+                if (operation.getOperation() == EventOperation.ADD) {
+                    likeGraph.addLike(operation.getFilmId(), operation.getUserId());
+                } else {
+                    likeGraph.removeLike(operation.getFilmId(), operation.getUserId());
+                }
+                recommendationModel.likeChanged(operation.getFilmId(), operation.getUserId());
+            }
+        });
+        log.info("Применено операций с лайками: {} из {}", applied.size(), operations.size());
+        return applied;
+    }
 
-        if (!title.isEmpty() && !director.isEmpty()) {
-            log.info("Find by title or director >>>>");
-            return getFilmsByDirectorOrTitle(query);
+    private static void collectApplied(List<LikeOperation> group, int[] counts, List<LikeOperation> applied) {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                applied.add(group.get(i));
+            }
+        }
+    }
+
+    private void checkFilmAndUserExist(long filmId, long userId) {
+        if (!filmExists(filmId)) {
+            log.warn("Фильм с id {} не найден", filmId);
+            throw new FilmDoesNotExistException();
         }
-        if (title.isEmpty()) {
-            log.info("Find by director>>>>");
-            return getFilmsByDirector(query);
+        if (!userStorage.userExists(userId)) {
+            log.warn("Пользователь с id {} не найден", userId);
+            throw new UserDoesNotExistException();
         }
-        log.info("Find by title>>>>");
-        return getFilmsByTitle(query);
+    }
+
+    @Override
+    public List<Film> getMostPopularFilms(int count, Integer genreId, Integer year) {
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT F.* FROM FILM AS F WHERE 1 = 1 ");
+        if (genreId != null) {
+            sql.append("AND EXISTS (SELECT 1 FROM FILM_GENRE AS FG WHERE FG.FILM_ID = F.FILM_ID AND FG.GENRE_ID = ?) ");
+            params.add(genreId);
+        }
+        if (year != null) {
+            sql.append("AND F.RELEASE_DATE >= ? AND F.RELEASE_DATE < ? ");
+            params.add(Date.valueOf(LocalDate.of(year, 1, 1)));
+            params.add(Date.valueOf(LocalDate.of(year + 1, 1, 1)));
+        }
+        sql.append("ORDER BY F.LIKES_COUNT DESC, F.FILM_ID LIMIT ?");
+        params.add(count);
+        return fillAssociations(jdbcTemplate.query(sql.toString(), this::mapRowToFilm, params.toArray()));
+    }
+
+    @Override
+    public List<Film> getFilmsByDirectorOrTitle(String query, String director, String title) {
+        log.info("Query = {} director = {} title = {}", query, director, title);
+        boolean byTitle = !title.isEmpty();
+        boolean byDirector = !director.isEmpty() || !byTitle;
+        Map<Long, Integer> relevance = searchIndex.search(query, byTitle, byDirector);
+        List<Film> films = getFilmsByIds(relevance.keySet());
+        films.sort(Comparator.comparing((Film film) -> relevance.get(film.getId())).reversed()
+                .thenComparing(film -> film.getLikes().size(), Comparator.reverseOrder())
+                .thenComparing(Film::getId));
+        return films;
+    }
+
+    @Override
+    public List<Suggestion> getSuggestions(String prefix, int count) {
+        return searchIndex.suggest(prefix, count);
     }
 
     public void deleteFilm(long filmId) {
-        Film film = findFilmById(filmId);
         String sqlQuery = "DELETE FROM FILM WHERE FILM_ID = ?;";
-        jdbcTemplate.update(sqlQuery, filmId);
+        if (jdbcTemplate.update(sqlQuery, filmId) == 0) {
+            log.warn("Фильм с id {} не найден", filmId);
+            throw new FilmDoesNotExistException();
+        }
+        filmCache.invalidate(filmId);
+        SqlUtils.afterCommit(() -> {
+            searchIndex.removeFilm(filmId);
+            recommendationModel.filmRemoved(filmId, likeGraph.removeFilm(filmId));
+        });
+    }
+
+    /**
+     * Удаляет зависимые строки фильма по одной группе за вызов: лайки, голоса за отзывы о фильме
+     * и сами отзывы. Счётчик лайков и граф лайков обновляются вместе с каждой порцией.
+     */
+    @Override
+    @Transactional
+    public int purgeFilmDependents(long filmId, int limit) {
+        String reviewsOfFilm = "REVIEW_ID IN (SELECT REVIEW_ID FROM REVIEW WHERE FILM_ID = ?)";
+        List<IntSupplier> stages = List.of(
+                () -> purgeLikes(filmId, limit),
+                () -> SqlUtils.deleteChunk(jdbcTemplate, "REVIEW_LIKE", reviewsOfFilm, limit, filmId),
+                () -> SqlUtils.deleteChunk(jdbcTemplate, "REVIEW_DISLIKE", reviewsOfFilm, limit, filmId),
+                () -> SqlUtils.deleteChunk(jdbcTemplate, "REVIEW", "FILM_ID = ?", limit, filmId));
+        for (IntSupplier stage : stages) {
+            int deleted = stage.getAsInt();
+            if (deleted > 0) {
+                return deleted;
+            }
+        }
+        return 0;
     }
 
-    private List<Film> getFilmsByDirector(String query) {
-        String sql = "SELECT f.*, r.RATING_NAME FROM FILM f INNER JOIN RATING r ON r.RATING_ID = f.RATING_ID " +
-                "LEFT JOIN FILM_DIRECTOR fd ON fd.FILM_ID = f.FILM_ID LEFT JOIN DIRECTOR d ON fd.DIRECTOR_ID = d.DIRECTOR_ID " +
-                "LEFT JOIN FILM_LIKE fl ON fl.FILM_ID = f.FILM_ID GROUP BY f.FILM_ID " +
-                "HAVING LOWER(d.DIRECTOR_NAME) LIKE ? ORDER BY COUNT(fl.USER_ID) DESC";
-        return jdbcTemplate.query(sql, this::mapRowToFilm, query);
+    private int purgeLikes(long filmId, int limit) {
+        List<Long> rowIds = new ArrayList<>();
+        List<Long> userIds = new ArrayList<>();
+        jdbcTemplate.query("SELECT _ROWID_ AS ROW_ID, USER_ID FROM FILM_LIKE WHERE FILM_ID = ? LIMIT ?", rs -> {
+            rowIds.add(rs.getLong("ROW_ID"));
+            userIds.add(rs.getLong("USER_ID"));
+        }, filmId, limit);
+        if (rowIds.isEmpty()) {
+            return 0;
+        }
+        List<Long> unlikedUsers = SqlUtils.deleteByRowIds(jdbcTemplate, "FILM_LIKE", rowIds, userIds);
+        if (unlikedUsers.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.update(QUERY_TO_CHANGE_LIKES_COUNT, -unlikedUsers.size(), filmId);
+        filmCache.invalidate(filmId);
+        SqlUtils.afterCommit(() -> {
+            for (Long userId : unlikedUsers) {
+                likeGraph.removeLike(filmId, userId);
+                recommendationModel.likeChanged(filmId, userId);
+            }
+        });
+        return unlikedUsers.size();
     }
 
-    private List<Film> getFilmsByTitle(String query) {
-        String sql = "SELECT f.*, r.RATING_NAME FROM FILM f INNER JOIN RATING r ON r.RATING_ID = f.RATING_ID " +
-                "LEFT JOIN FILM_LIKE fl ON fl.FILM_ID = f.FILM_ID GROUP BY f.FILM_ID " +
-                "HAVING LOWER(f.NAME) LIKE ? ORDER BY COUNT(fl.USER_ID) DESC";
-        return jdbcTemplate.query(sql, this::mapRowToFilm, query);
+    private List<Film> getFilmsByIds(Collection<Long> ids) {
+        List<Film> films = new ArrayList<>();
+        for (List<Long> chunk : Lists.partition(new ArrayList<>(ids), SqlUtils.IN_CHUNK_SIZE)) {
+            String sql = "SELECT * FROM FILM WHERE FILM_ID IN " + SqlUtils.inClause(chunk.size());
+            films.addAll(jdbcTemplate.query(sql, this::mapRowToFilm, chunk.toArray()));
+        }
+        return fillAssociations(films);
     }
 
-    private List<Film> getFilmsByDirectorOrTitle(String query) {
-        String sql = "SELECT f.*, r.RATING_NAME FROM FILM f INNER JOIN RATING r ON r.RATING_ID = f.RATING_ID " +
-                "LEFT JOIN FILM_DIRECTOR fd ON fd.FILM_ID = f.FILM_ID LEFT JOIN DIRECTOR d ON fd.DIRECTOR_ID = d.DIRECTOR_ID " +
-                "LEFT JOIN FILM_LIKE fl ON fl.FILM_ID = f.FILM_ID GROUP BY f.FILM_ID " +
-                "HAVING LOWER(d.DIRECTOR_NAME) LIKE ? OR LOWER(f.NAME) LIKE ? ORDER BY COUNT(fl.USER_ID) DESC";
-        return jdbcTemplate.query(sql, this::mapRowToFilm, query, query);
+    private void indexFilm(Film film) {
+        searchIndex.indexFilm(film.getId(), film.getName(),
+                film.getDirectors().stream().map(Director::getId).collect(Collectors.toList()));
+    }
+
+    @PostConstruct
+    private void buildIndexes() {
+        reloadLikeGraph();
+        recommendationModel.rebuild();
+        for (Director director : directorStorage.getAllDirectors()) {
+            searchIndex.indexDirector(director.getId(), director.getName());
+        }
+        Map<Long, List<Integer>> directorsOfFilms = new HashMap<>();
+        jdbcTemplate.query("SELECT FILM_ID, DIRECTOR_ID FROM FILM_DIRECTOR", rs -> {
+            directorsOfFilms.computeIfAbsent(rs.getLong("FILM_ID"), id -> new ArrayList<>())
+                    .add(rs.getInt("DIRECTOR_ID"));
+        });
+        jdbcTemplate.query("SELECT FILM_ID, NAME FROM FILM", rs -> {
+            long filmId = rs.getLong("FILM_ID");
+            searchIndex.indexFilm(filmId, rs.getString("NAME"),
+                    directorsOfFilms.getOrDefault(filmId, Collections.emptyList()));
+        });
     }
 
     @Override
     public List<Film> getRecommendations(long userId) {
-        /*
-        Описание запроса:
-        Подзапрос (1) - Найти id пользователей, с максимальным количеством пересечения по лайкам:
-        Объединям таблицу FILM_LIKE с самой собой, делаем right join
-        и оставляем справа только id данного пользователя, слева id всех пользователей, кроме нашего и null.
-        Получается такая таблица: FL1.user_id | film_id | FL2.user_id
-        Таким образом в FL1.user_id получаются id всех пользователей, которые лайкали такие же фильмы, что и данный.
-        Группируем пользователей по id, сортируем по частоте этих id
-        (то есть в начале списка будут пользователи, у которых наиболее совпадают лайки с данным).
-        Выбираем первых трех из этих пользователей
-
-        Подзапрос (2):
-        Находим id фильмов, которые лайкнули найденные пользователи
-
-        Подзапрос (3):
-        Находим id фильмов, которые лайкнул данный пользователь
-
-        Запрос (4):
-        Находим фильмы, c id, которые есть в списке из (2), но нет в списке из (3).
-        (То есть те, которые лайкали найденные пользователи, на не лайкал данный)
-         */
-        String sql =
-                "SELECT * FROM FILM F " + //(4)
-                        "JOIN RATING R ON F.RATING_ID = R.RATING_ID " +
-                        "WHERE F.FILM_ID IN (" +
-                        "SELECT FILM_ID FROM FILM_LIKE " + //(2)
-                        "WHERE USER_ID IN (" +
-                        "SELECT FL1.USER_ID FROM FILM_LIKE FL1 " + //(1)
-                        "RIGHT JOIN FILM_LIKE FL2 ON FL2.FILM_ID = FL1.FILM_ID " +
-                        "GROUP BY FL1.USER_ID, FL2.USER_ID " +
-                        "HAVING FL1.USER_ID IS NOT NULL AND " +
-                        "FL1.USER_ID != ? AND " +
-                        "FL2.USER_ID = ? " +
-                        "ORDER BY COUNT(FL1.USER_ID) DESC " +
-                        "LIMIT 3 " +
-                        ") " +
-                        "AND FILM_ID NOT IN (" +
-                        "SELECT FILM_ID FROM FILM_LIKE " + //(3)
-                        "WHERE USER_ID = ?" +
-                        ")" +
-                        ")";
-
-        return jdbcTemplate.query(sql, this::mapRowToFilm, userId, userId, userId);
+        List<Film> films = getFilmsByIds(recommendationModel.recommend(userId));
+        films.sort(Comparator.comparing(Film::getId));
+        return films;
+    }
+
+    @Override
+    public List<Film> getSimilarFilms(long filmId, int count) {
+        if (!filmExists(filmId)) {
+            log.warn("Фильм с id {} не найден", filmId);
+            throw new FilmDoesNotExistException();
+        }
+        List<Long> similarIds = recommendationModel.findSimilar(filmId, count);
+        Map<Long, Integer> positions = new HashMap<>();
+        for (int i = 0; i < similarIds.size(); i++) {
+            positions.put(similarIds.get(i), i);
+        }
+        List<Film> films = getFilmsByIds(similarIds);
+        films.sort(Comparator.comparing(film -> positions.get(film.getId())));
+        return films;
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.likes.reload-interval-ms}",
+            initialDelayString = "${filmorate.likes.reload-interval-ms}")
+    public void reloadLikeGraph() {
+        int[] likesCount = {0};
+        likeGraph.reload(sink -> jdbcTemplate.query("SELECT FILM_ID, USER_ID FROM FILM_LIKE", rs -> {
+            sink.accept(rs.getInt("FILM_ID"), rs.getInt("USER_ID"));
+            likesCount[0]++;
+        }));
+        filmCache.invalidateAll();
+        log.info("Граф лайков загружен из базы, лайков: {}", likesCount[0]);
     }
 }
 
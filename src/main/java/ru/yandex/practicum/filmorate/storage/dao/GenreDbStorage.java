@@ -4,12 +4,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.CacheStats;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.cache.ReferenceCache;
 
+import javax.annotation.PostConstruct;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -19,33 +21,56 @@ import java.util.Optional;
 public class GenreDbStorage implements GenreStorage {
 
     private final JdbcTemplate jdbcTemplate;
+    private final ReferenceCache<Genre> cache;
 
     public GenreDbStorage(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
+        this.cache = new ReferenceCache<>("genres", this::loadAllGenres, this::loadGenreById, Genre::getId);
+    }
+
+    @PostConstruct
+    private void loadCache() {
+        log.info("Загружено жанров в кэш: {}", cache.load().size());
     }
 
     @Override
     public Map<Integer, Genre> getAllGenres() {
-        Map<Integer, Genre> allGenre = new HashMap<>();
-        String sqlQuery = "SELECT * FROM GENRE;";
-        List<Genre> genreFromDb = jdbcTemplate.query(sqlQuery, this::mapRowToGenre);
-        for (Genre genre : genreFromDb) {
-            allGenre.put(genre.getId(), genre);
-        }
-        return allGenre;
+        return cache.getAll();
     }
 
     @Override
     public Optional<Genre> findGenreById(Integer id) {
+        Optional<Genre> genre = cache.get(id);
+        if (genre.isPresent()) {
+            log.info("Найден жанр с id {}", id);
+        } else {
+            log.warn("Жанр с id {} не найден", id);
+        }
+        return genre;
+    }
+
+    @Override
+    public void invalidateCache() {
+        cache.invalidate();
+        log.info("Кэш жанров сброшен");
+    }
+
+    @Override
+    public CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    private List<Genre> loadAllGenres() {
+        String sqlQuery = "SELECT * FROM GENRE;";
+        return jdbcTemplate.query(sqlQuery, this::mapRowToGenre);
+    }
+
+    private Optional<Genre> loadGenreById(Integer id) {
         String sqlQuery = "SELECT * FROM GENRE WHERE GENRE_ID = ?";
         SqlRowSet genreRows = jdbcTemplate.queryForRowSet(sqlQuery, id);
         if (genreRows.next()) {
-            Genre genre = new Genre(genreRows.getInt("GENRE_ID"),
-                    genreRows.getString("GENRE_NAME"));
-            log.info("Найден жанр с id {}", id);
-            return Optional.of(genre);
+            return Optional.of(new Genre(genreRows.getInt("GENRE_ID"), genreRows.getString("GENRE_NAME")));
         }
-        log.warn("Жанр с id {} не найден", id);
         return Optional.empty();
     }
 
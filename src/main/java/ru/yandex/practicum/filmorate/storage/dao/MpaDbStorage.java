@@ -4,12 +4,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.CacheStats;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.storage.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.cache.ReferenceCache;
 
+import javax.annotation.PostConstruct;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -19,32 +21,56 @@ import java.util.Optional;
 public class MpaDbStorage implements MpaStorage {
 
     private final JdbcTemplate jdbcTemplate;
+    private final ReferenceCache<Mpa> cache;
 
     public MpaDbStorage(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
+        this.cache = new ReferenceCache<>("mpa", this::loadAllMpa, this::loadMpaById, Mpa::getId);
+    }
+
+    @PostConstruct
+    private void loadCache() {
+        log.info("Загружено рейтингов в кэш: {}", cache.load().size());
     }
 
     @Override
     public Map<Integer, Mpa> getAllMpa() {
-        Map<Integer, Mpa> allMpa = new HashMap<>();
-        String sqlQuery = "SELECT * FROM RATING;";
-        List<Mpa> mpaFromDb = jdbcTemplate.query(sqlQuery, this::mapRowToMpa);
-        for (Mpa mpa : mpaFromDb) {
-            allMpa.put(mpa.getId(), mpa);
-        }
-        return allMpa;
+        return cache.getAll();
     }
 
     @Override
     public Optional<Mpa> findMpaById(Integer id) {
+        Optional<Mpa> mpa = cache.get(id);
+        if (mpa.isPresent()) {
+            log.info("Найден рейтинг с id {}", id);
+        } else {
+            log.warn("Рейтинг с id {} не найден", id);
+        }
+        return mpa;
+    }
+
+    @Override
+    public void invalidateCache() {
+        cache.invalidate();
+        log.info("Кэш рейтингов сброшен");
+    }
+
+    @Override
+    public CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
+    private List<Mpa> loadAllMpa() {
+        String sqlQuery = "SELECT * FROM RATING;";
+        return jdbcTemplate.query(sqlQuery, this::mapRowToMpa);
+    }
+
+    private Optional<Mpa> loadMpaById(Integer id) {
         String sqlQuery = "SELECT * FROM RATING WHERE RATING_ID = ?";
         SqlRowSet mpaRows = jdbcTemplate.queryForRowSet(sqlQuery, id);
         if (mpaRows.next()) {
-            Mpa mpa = new Mpa(mpaRows.getInt("RATING_ID"), mpaRows.getString("RATING_NAME"));
-            log.info("Найден рейтинг с id {}", id);
-            return Optional.of(mpa);
+            return Optional.of(new Mpa(mpaRows.getInt("RATING_ID"), mpaRows.getString("RATING_NAME")));
         }
-        log.warn("Рейтинг с id {} не найден", id);
         return Optional.empty();
     }
 
@@ -2,15 +2,20 @@ package ru.yandex.practicum.filmorate.storage.dao;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exception.FilmDoesNotExistException;
 import ru.yandex.practicum.filmorate.exception.ReviewDoesNotExistException;
-import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.exception.UserDoesNotExistException;
+import ru.yandex.practicum.filmorate.model.EventOperation;
 import ru.yandex.practicum.filmorate.model.Review;
-import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.ReviewVote;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.ReviewStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
@@ -18,8 +23,14 @@ import ru.yandex.practicum.filmorate.storage.UserStorage;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
@@ -31,6 +42,14 @@ public class ReviewDbStorage implements ReviewStorage {
     private static final String QUERY_TO_SET_USEFUL = "UPDATE REVIEW SET USEFUL = ((SELECT COUNT(REVIEW_ID) " +
             "FROM REVIEW_LIKE WHERE REVIEW_ID = ?) - (SELECT COUNT(REVIEW_ID) FROM REVIEW_DISLIKE " +
             "WHERE REVIEW_ID = ?)) WHERE REVIEW_ID = ?;";
+    private static final String QUERY_TO_CHANGE_USEFUL = "UPDATE REVIEW SET USEFUL = USEFUL + ? WHERE REVIEW_ID = ?;";
+    private static final String QUERY_TO_FIND_DRIFTED_USEFUL = "SELECT R.REVIEW_ID, R.USEFUL, " +
+            "(SELECT COUNT(*) FROM REVIEW_LIKE AS L WHERE L.REVIEW_ID = R.REVIEW_ID) - " +
+            "(SELECT COUNT(*) FROM REVIEW_DISLIKE AS D WHERE D.REVIEW_ID = R.REVIEW_ID) AS ACTUAL_USEFUL " +
+            "FROM REVIEW AS R WHERE R.REVIEW_ID > ? ORDER BY R.REVIEW_ID LIMIT ?;";
+    private static final int RECONCILE_BATCH_SIZE = 1000;
+    private static final String QUERY_TO_CHECK_REVIEW_EXISTS = "SELECT EXISTS (SELECT 1 FROM REVIEW " +
+            "WHERE REVIEW_ID = ?);";
 
     public ReviewDbStorage(JdbcTemplate jdbcTemplate, @Qualifier("filmDbStorage") FilmStorage filmStorage,
                            @Qualifier("userDbStorage") UserStorage userStorage) {
@@ -42,22 +61,28 @@ public class ReviewDbStorage implements ReviewStorage {
     @Override
     public Review create(Review review) {
         KeyHolder keyHolder = new GeneratedKeyHolder();
-        User user = userStorage.findUserById(review.getUserId());
-        Film film = filmStorage.findFilmById(review.getFilmId());
         String sqlQuery = "INSERT INTO REVIEW (CONTENT, IS_POSITIVE, USER_ID, FILM_ID, USEFUL) VALUES " +
                 "(?, ?, ?, ?, ?);";
-        jdbcTemplate.update(con -> {
-            PreparedStatement ps = con
-                    .prepareStatement(sqlQuery, new String[]{"review_id"});
-            ps.setString(1, review.getContent());
-            ps.setBoolean(2, review.getIsPositive());
-            ps.setLong(3, review.getUserId());
-            ps.setLong(4, review.getFilmId());
-            ps.setLong(5, review.getUseful());
-            return ps;
-        }, keyHolder);
+        try {
+            jdbcTemplate.update(con -> {
+                PreparedStatement ps = con
+                        .prepareStatement(sqlQuery, new String[]{"review_id"});
+                ps.setString(1, review.getContent());
+                ps.setBoolean(2, review.getIsPositive());
+                ps.setLong(3, review.getUserId());
+                ps.setLong(4, review.getFilmId());
+                ps.setLong(5, 0);
+                return ps;
+            }, keyHolder);
+        } catch (DataIntegrityViolationException e) {
+            checkUserExists(review.getUserId());
+            if (!filmStorage.filmExists(review.getFilmId())) {
+                log.warn("Фильм с id {} не найден", review.getFilmId());
+                throw new FilmDoesNotExistException();
+            }
+            throw e;
+        }
         review.setReviewId((Objects.requireNonNull(keyHolder.getKey()).longValue()));
-        setRightUseful(review.getReviewId());
         return findReviewById(review.getReviewId());
     }
 
@@ -94,6 +119,11 @@ public class ReviewDbStorage implements ReviewStorage {
         throw new ReviewDoesNotExistException();
     }
 
+    @Override
+    public boolean reviewExists(long id) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(QUERY_TO_CHECK_REVIEW_EXISTS, Boolean.class, id));
+    }
+
     private Review mapRowToReview(ResultSet rs, int rowNum) throws SQLException {
         return Review.builder()
                 .reviewId(rs.getLong("REVIEW_ID"))
@@ -107,8 +137,8 @@ public class ReviewDbStorage implements ReviewStorage {
 
     @Override
     public List<Review> getReviewsOfFilm(long filmId, int count) {
-        String queryWithFilmId = "SELECT * FROM REVIEW WHERE FILM_ID = ? ORDER BY USEFUL DESC LIMIT ?";
-        String queryWithoutFilmId = "SELECT * FROM REVIEW ORDER BY USEFUL DESC LIMIT ?";
+        String queryWithFilmId = "SELECT * FROM REVIEW WHERE FILM_ID = ? ORDER BY USEFUL DESC, REVIEW_ID LIMIT ?";
+        String queryWithoutFilmId = "SELECT * FROM REVIEW ORDER BY USEFUL DESC, REVIEW_ID LIMIT ?";
         if (filmId == 0) {
             return jdbcTemplate.query(queryWithoutFilmId, this::mapRowToReview, count);
         }
@@ -116,42 +146,171 @@ public class ReviewDbStorage implements ReviewStorage {
     }
 
     @Override
+    public List<Review> getReviewsOfFilm(long filmId, long afterUseful, long afterReviewId, int count) {
+        String queryWithFilmId = "SELECT * FROM REVIEW WHERE FILM_ID = ? " +
+                "AND (USEFUL < ? OR (USEFUL = ? AND REVIEW_ID > ?)) ORDER BY USEFUL DESC, REVIEW_ID LIMIT ?";
+        String queryWithoutFilmId = "SELECT * FROM REVIEW " +
+                "WHERE USEFUL < ? OR (USEFUL = ? AND REVIEW_ID > ?) ORDER BY USEFUL DESC, REVIEW_ID LIMIT ?";
+        if (filmId == 0) {
+            return jdbcTemplate.query(queryWithoutFilmId, this::mapRowToReview, afterUseful, afterUseful,
+                    afterReviewId, count);
+        }
+        return jdbcTemplate.query(queryWithFilmId, this::mapRowToReview, filmId, afterUseful, afterUseful,
+                afterReviewId, count);
+    }
+
+    @Override
+    @Transactional
     public void addLike(long reviewId, long userId) {
-        Review review = findReviewById(reviewId);
-        User user = userStorage.findUserById(userId);
         String queryToAddLike = "INSERT INTO REVIEW_LIKE (REVIEW_ID, USER_ID) VALUES (?, ?);";
-        jdbcTemplate.update(queryToAddLike, reviewId, userId);
-        setRightUseful(reviewId);
+        insertVote(queryToAddLike, reviewId, userId, 1);
     }
 
     @Override
+    @Transactional
     public void addDislike(long reviewId, long userId) {
-        Review review = findReviewById(reviewId);
-        User user = userStorage.findUserById(userId);
         String queryToAddDislike = "INSERT INTO REVIEW_DISLIKE (REVIEW_ID, USER_ID) VALUES (?, ?);";
-        jdbcTemplate.update(queryToAddDislike, reviewId, userId);
-        setRightUseful(reviewId);
+        insertVote(queryToAddDislike, reviewId, userId, -1);
     }
 
     @Override
+    @Transactional
     public void deleteLike(long reviewId, long userId) {
-        Review review = findReviewById(reviewId);
-        User user = userStorage.findUserById(userId);
         String queryToDeleteLike = "DELETE FROM REVIEW_LIKE WHERE REVIEW_ID = ? AND USER_ID = ?";
-        jdbcTemplate.update(queryToDeleteLike, reviewId, userId);
-        setRightUseful(reviewId);
+        deleteVote(queryToDeleteLike, reviewId, userId, -1);
     }
 
     @Override
+    @Transactional
     public void deleteDislike(long reviewId, long userId) {
-        Review review = findReviewById(reviewId);
-        User user = userStorage.findUserById(userId);
         String queryToDeleteDislike = "DELETE FROM REVIEW_DISLIKE WHERE REVIEW_ID = ? AND USER_ID = ?";
-        jdbcTemplate.update(queryToDeleteDislike, reviewId, userId);
-        setRightUseful(reviewId);
+        deleteVote(queryToDeleteDislike, reviewId, userId, 1);
     }
 
-    private void setRightUseful(long reviewId) {
-        jdbcTemplate.update(QUERY_TO_SET_USEFUL, reviewId, reviewId, reviewId);
+    /**
+     * Применяет пачку голосов в одной транзакции. Голоса за удалённые отзывы или от удалённых
+     * пользователей пропускаются, повторное добавление и удаление отсутствующего голоса ничего не меняют.
+     * USEFUL каждого затронутого отзыва меняется одним обновлением на суммарную разницу.
+     */
+    @Override
+    @Transactional
+    public int applyVotes(Collection<ReviewVote> votes) {
+        Set<Long> existingReviews = SqlUtils.findExistingIds(jdbcTemplate, "REVIEW", "REVIEW_ID",
+                votes.stream().map(ReviewVote::getReviewId).collect(Collectors.toSet()));
+        Set<Long> existingUsers = SqlUtils.findExistingIds(jdbcTemplate, "\"USER\"", "USER_ID",
+                votes.stream().map(ReviewVote::getUserId).collect(Collectors.toSet()));
+        List<ReviewVote> validVotes = votes.stream()
+                .filter(vote -> existingReviews.contains(vote.getReviewId())
+                        && existingUsers.contains(vote.getUserId()))
+                .collect(Collectors.toList());
+        Map<Long, Integer> usefulDeltas = new HashMap<>();
+        int applied = 0;
+        for (boolean positive : new boolean[]{true, false}) {
+            String table = positive ? "REVIEW_LIKE" : "REVIEW_DISLIKE";
+            for (EventOperation operation : new EventOperation[]{EventOperation.ADD, EventOperation.REMOVE}) {
+                List<ReviewVote> group = validVotes.stream()
+                        .filter(vote -> vote.isPositive() == positive && vote.getOperation() == operation)
+                        .collect(Collectors.toList());
+                if (group.isEmpty()) {
+                    continue;
+                }
+                int[] counts;
+                if (operation == EventOperation.ADD) {
+                    counts = jdbcTemplate.batchUpdate("INSERT INTO " + table + " (REVIEW_ID, USER_ID) " +
+                            "SELECT CAST(? AS INTEGER), CAST(? AS INTEGER) FROM DUAL WHERE NOT EXISTS " +
+                            "(SELECT 1 FROM " + table + " WHERE REVIEW_ID = ? AND USER_ID = ?);", group.stream()
+                            .map(vote -> new Object[]{vote.getReviewId(), vote.getUserId(), vote.getReviewId(),
+                                    vote.getUserId()})
+                            .collect(Collectors.toList()));
+                } else {
+                    counts = jdbcTemplate.batchUpdate("DELETE FROM " + table + " WHERE REVIEW_ID = ? AND USER_ID = ?;",
+                            group.stream()
+                                    .map(vote -> new Object[]{vote.getReviewId(), vote.getUserId()})
+                                    .collect(Collectors.toList()));
+                }
+                int delta = positive == (operation == EventOperation.ADD) ? 1 : -1;
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] > 0) {
+                        usefulDeltas.merge(group.get(i).getReviewId(), delta, Integer::sum);
+                        applied++;
+                    }
+                }
+            }
+        }
+        jdbcTemplate.batchUpdate(QUERY_TO_CHANGE_USEFUL, usefulDeltas.entrySet().stream()
+                .filter(entry -> entry.getValue() != 0)
+                .map(entry -> new Object[]{entry.getValue(), entry.getKey()})
+                .collect(Collectors.toList()));
+        log.info("Применено голосов за отзывы: {} из {}", applied, votes.size());
+        return applied;
+    }
+
+    /**
+     * Пересчитывает USEFUL по таблицам голосов для отзывов, у которых счётчик разошёлся с голосами.
+     * Отзывы обходятся пачками по возрастанию id, переписываются только расхождения.
+     */
+    @Scheduled(fixedDelayString = "${filmorate.reviews.useful-reconcile-interval-ms}",
+            initialDelayString = "${filmorate.reviews.useful-reconcile-interval-ms}")
+    public void reconcileUseful() {
+        long lastId = 0;
+        int fixedCount = 0;
+        while (true) {
+            List<Long> driftedIds = new ArrayList<>();
+            long[] batchLastId = {lastId};
+            jdbcTemplate.query(QUERY_TO_FIND_DRIFTED_USEFUL, rs -> {
+                batchLastId[0] = rs.getLong("REVIEW_ID");
+                if (rs.getLong("USEFUL") != rs.getLong("ACTUAL_USEFUL")) {
+                    driftedIds.add(batchLastId[0]);
+                }
+            }, lastId, RECONCILE_BATCH_SIZE);
+            if (batchLastId[0] == lastId) {
+                break;
+            }
+            lastId = batchLastId[0];
+            if (!driftedIds.isEmpty()) {
+                jdbcTemplate.batchUpdate(QUERY_TO_SET_USEFUL, driftedIds, driftedIds.size(), (ps, id) -> {
+                    ps.setLong(1, id);
+                    ps.setLong(2, id);
+                    ps.setLong(3, id);
+                });
+                fixedCount += driftedIds.size();
+            }
+        }
+        if (fixedCount > 0) {
+            log.warn("Исправлен рейтинг полезности у {} отзывов", fixedCount);
+        }
+    }
+
+    private void insertVote(String sqlQuery, long reviewId, long userId, int usefulDelta) {
+        try {
+            jdbcTemplate.update(sqlQuery, reviewId, userId);
+        } catch (DataIntegrityViolationException e) {
+            checkReviewAndUserExist(reviewId, userId);
+            throw e;
+        }
+        jdbcTemplate.update(QUERY_TO_CHANGE_USEFUL, usefulDelta, reviewId);
+    }
+
+    private void deleteVote(String sqlQuery, long reviewId, long userId, int usefulDelta) {
+        if (jdbcTemplate.update(sqlQuery, reviewId, userId) == 0) {
+            checkReviewAndUserExist(reviewId, userId);
+            return;
+        }
+        jdbcTemplate.update(QUERY_TO_CHANGE_USEFUL, usefulDelta, reviewId);
+    }
+
+    private void checkReviewAndUserExist(long reviewId, long userId) {
+        if (!reviewExists(reviewId)) {
+            log.warn("Отзыв с id {} не найден", reviewId);
+            throw new ReviewDoesNotExistException();
+        }
+        checkUserExists(userId);
+    }
+
+    private void checkUserExists(long userId) {
+        if (!userStorage.userExists(userId)) {
+            log.warn("Пользователь с id {} не найден", userId);
+            throw new UserDoesNotExistException();
+        }
     }
 }
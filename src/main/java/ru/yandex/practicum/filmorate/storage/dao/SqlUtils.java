@@ -0,0 +1,77 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import com.google.common.collect.Lists;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+final class SqlUtils {
+
+    static final int IN_CHUNK_SIZE = 500;
+
+    private SqlUtils() {
+    }
+
+    /**
+     * Выполняет действие после фиксации текущей транзакции, а вне транзакции — сразу.
+     * Так индексы, графы и модель рекомендаций в памяти не видят строк, которые ещё могут откатиться.
+     */
+    static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    static String inClause(int size) {
+        return "(" + String.join(", ", Collections.nCopies(size, "?")) + ")";
+    }
+
+    static Set<Long> findExistingIds(JdbcTemplate jdbcTemplate, String table, String idColumn, Collection<Long> ids) {
+        Set<Long> existingIds = new HashSet<>();
+        for (List<Long> chunk : Lists.partition(new ArrayList<>(ids), IN_CHUNK_SIZE)) {
+            String sql = "SELECT " + idColumn + " FROM " + table + " WHERE " + idColumn + " IN " +
+                    inClause(chunk.size());
+            existingIds.addAll(jdbcTemplate.queryForList(sql, Long.class, chunk.toArray()));
+        }
+        return existingIds;
+    }
+
+    /**
+     * Удаляет не больше {@code limit} строк таблицы, подходящих под условие, и возвращает их число.
+     * Строки выбираются по служебному столбцу H2 {@code _ROWID_}, поэтому подходит и для таблиц без ключа.
+     */
+    static int deleteChunk(JdbcTemplate jdbcTemplate, String table, String condition, int limit, Object... args) {
+        String sql = "DELETE FROM " + table + " WHERE _ROWID_ IN (SELECT _ROWID_ FROM " + table + " WHERE " +
+                condition + " LIMIT ?)";
+        Object[] params = Arrays.copyOf(args, args.length + 1);
+        params[args.length] = limit;
+        return jdbcTemplate.update(sql, params);
+    }
+
+    /**
+     * Удаляет строки по {@code _ROWID_} пакетом отдельных DELETE и возвращает те элементы {@code rows}
+     * (по одному на строку), чьи строки удалены этим вызовом. Строки, удалённые параллельно между выборкой
+     * и удалением, в результат не попадают, поэтому счётчики по ним не уменьшаются второй раз.
+     */
+    static <T> List<T> deleteByRowIds(JdbcTemplate jdbcTemplate, String table, List<Long> rowIds, List<T> rows) {
+        int[] counts = jdbcTemplate.batchUpdate("DELETE FROM " + table + " WHERE _ROWID_ = ?",
+                rowIds.stream().map(rowId -> new Object[]{rowId}).collect(Collectors.toList()));
+        List<T> deleted = new ArrayList<>(counts.length);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                deleted.add(rows.get(i));
+            }
+        }
+        return deleted;
+    }
+}
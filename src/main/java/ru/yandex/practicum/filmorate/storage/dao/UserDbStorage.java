@@ -1,43 +1,66 @@
 package ru.yandex.practicum.filmorate.storage.dao;
 
+import com.google.common.collect.Lists;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.UserDoesNotExistException;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.index.AdjacencyIndex;
+import ru.yandex.practicum.filmorate.storage.index.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.index.LikeGraph;
+import ru.yandex.practicum.filmorate.storage.index.RecommendationModel;
 
+import javax.annotation.PostConstruct;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component("userDbStorage")
 public class UserDbStorage implements UserStorage {
 
+    private static final String QUERY_TO_CHECK_USER_EXISTS = "SELECT EXISTS (SELECT 1 FROM \"USER\" " +
+            "WHERE USER_ID = ?);";
+
     private final JdbcTemplate jdbcTemplate;
+    private final LikeGraph likeGraph;
+    private final RecommendationModel recommendationModel;
+    private final FilmCache filmCache;
+    private final FriendGraph friendGraph;
 
-    public UserDbStorage(JdbcTemplate jdbcTemplate) {
+    public UserDbStorage(JdbcTemplate jdbcTemplate, LikeGraph likeGraph, RecommendationModel recommendationModel,
+                         FilmCache filmCache, FriendGraph friendGraph) {
         this.jdbcTemplate = jdbcTemplate;
+        this.likeGraph = likeGraph;
+        this.recommendationModel = recommendationModel;
+        this.filmCache = filmCache;
+        this.friendGraph = friendGraph;
     }
 
     @Override
-    public Map<Long, User> getUsers() {
-        Map<Long, User> users = new HashMap<>();
-        String sqlQuery = "SELECT * FROM \"USER\"";
-        List<User> usersFromDb = jdbcTemplate.query(sqlQuery, this::mapRowToUser);
-        for (User user : usersFromDb) {
-            users.put(user.getId(), user);
-        }
-        return users;
+    public List<User> getUsers(long afterId, int limit) {
+        String sqlQuery = "SELECT * FROM \"USER\" WHERE USER_ID > ? ORDER BY USER_ID LIMIT ?";
+        return jdbcTemplate.query(sqlQuery, this::mapRowToUser, afterId, limit);
     }
 
     @Override
@@ -95,6 +118,11 @@ public class UserDbStorage implements UserStorage {
         throw new UserDoesNotExistException();
     }
 
+    @Override
+    public boolean userExists(long id) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(QUERY_TO_CHECK_USER_EXISTS, Boolean.class, id));
+    }
+
     private User mapRowToUser(ResultSet rs, int rowNum) throws SQLException {
         return User.builder()
                 .email(rs.getString("EMAIL"))
@@ -107,39 +135,194 @@ public class UserDbStorage implements UserStorage {
 
     @Override
     public void addFriend(long userId, long friendId) {
-        User user = findUserById(userId);
-        User friend = findUserById(friendId);
         String sqlQuery = "INSERT INTO FRIENDSHIP (USER_FIRST_ID, USER_SECOND_ID) VALUES (?, ?);";
-        jdbcTemplate.update(sqlQuery, userId, friendId);
+        try {
+            jdbcTemplate.update(sqlQuery, userId, friendId);
+        } catch (DataIntegrityViolationException e) {
+            checkUserExists(userId);
+            checkUserExists(friendId);
+            throw e;
+        }
+        friendGraph.addFriend(userId, friendId);
     }
 
     @Override
     public void removeFromFriends(long userId, long friendId) {
         String sqlQuery = "DELETE FROM FRIENDSHIP WHERE USER_FIRST_ID = ? AND USER_SECOND_ID = ?;";
         jdbcTemplate.update(sqlQuery, userId, friendId);
+        friendGraph.removeFriend(userId, friendId);
     }
 
     @Override
     public List<User> getMutualFriends(long userId, long otherUserId) {
-        String sqlQuery = "SELECT * FROM \"USER\" AS U WHERE U.USER_ID IN (SELECT F.USER_SECOND_ID " +
-                "FROM FRIENDSHIP AS F WHERE F.USER_FIRST_ID = ? " +
-                "INTERSECT SELECT F.USER_SECOND_ID FROM FRIENDSHIP AS F WHERE F.USER_FIRST_ID = ?);";
-        return jdbcTemplate.query(sqlQuery, this::mapRowToUser, userId, otherUserId);
+        return findUsersByIds(boxed(AdjacencyIndex.intersection(friendGraph.getFriends(userId),
+                friendGraph.getFriends(otherUserId))));
     }
 
     @Override
     public List<User> getAllFriends(long userId) {
-        User user = findUserById(userId);
-        String sqlQuery = "SELECT * FROM \"USER\" AS U WHERE U.USER_ID IN " +
-                "(SELECT F.USER_SECOND_ID FROM FRIENDSHIP AS F WHERE F.USER_FIRST_ID = ?);";
-        return jdbcTemplate.query(sqlQuery, this::mapRowToUser, userId);
+        int[] friendIds = friendGraph.getFriends(userId);
+        if (friendIds.length == 0) {
+            checkUserExists(userId);
+        }
+        return findUsersByIds(boxed(friendIds));
     }
 
     @Override
+    @Transactional
     public void deleteUser(long userId) {
-        User user = findUserById(userId);
+        String queryToUpdateLikesCount = "UPDATE FILM SET LIKES_COUNT = LIKES_COUNT - 1 " +
+                "WHERE FILM_ID IN (SELECT FILM_ID FROM FILM_LIKE WHERE USER_ID = ?);";
+        jdbcTemplate.update(queryToUpdateLikesCount, userId);
+        String queryToUpdateUseful = "UPDATE REVIEW SET USEFUL = USEFUL " +
+                "- (SELECT COUNT(*) FROM REVIEW_LIKE L WHERE L.REVIEW_ID = REVIEW.REVIEW_ID AND L.USER_ID = ?) " +
+                "+ (SELECT COUNT(*) FROM REVIEW_DISLIKE D WHERE D.REVIEW_ID = REVIEW.REVIEW_ID AND D.USER_ID = ?) " +
+                "WHERE REVIEW_ID IN (SELECT REVIEW_ID FROM REVIEW_LIKE WHERE USER_ID = ? " +
+                "UNION SELECT REVIEW_ID FROM REVIEW_DISLIKE WHERE USER_ID = ?);";
+        jdbcTemplate.update(queryToUpdateUseful, userId, userId, userId, userId);
         String sqlQuery = "DELETE FROM \"USER\" WHERE USER_ID = ?;";
-        jdbcTemplate.update(sqlQuery, userId);
+        if (jdbcTemplate.update(sqlQuery, userId) == 0) {
+            log.warn("Пользователь с id {} не найден", userId);
+            throw new UserDoesNotExistException();
+        }
+        for (int filmId : likeGraph.getLikedFilms(userId)) {
+            filmCache.invalidate(filmId);
+        }
+        SqlUtils.afterCommit(() -> {
+            recommendationModel.userRemoved(userId, likeGraph.removeUser(userId));
+            friendGraph.removeUser(userId);
+        });
+    }
+
+    /**
+     * Удаляет зависимые строки пользователя по одной группе за вызов: лайки фильмов, голоса за отзывы,
+     * голоса за его отзывы, сами отзывы, дружбу и события. Счётчики лайков, полезность отзывов
+     * и графы в памяти обновляются вместе с каждой порцией.
+     */
+    @Override
+    @Transactional
+    public int purgeUserDependents(long userId, int limit) {
+        String reviewsOfUser = "REVIEW_ID IN (SELECT REVIEW_ID FROM REVIEW WHERE USER_ID = ?)";
+        List<IntSupplier> stages = List.of(
+                () -> purgeLikes(userId, limit),
+                () -> purgeVotes("REVIEW_LIKE", -1, userId, limit),
+                () -> purgeVotes("REVIEW_DISLIKE", 1, userId, limit),
+                () -> SqlUtils.deleteChunk(jdbcTemplate, "REVIEW_LIKE", reviewsOfUser, limit, userId),
+                () -> SqlUtils.deleteChunk(jdbcTemplate, "REVIEW_DISLIKE", reviewsOfUser, limit, userId),
+                () -> SqlUtils.deleteChunk(jdbcTemplate, "REVIEW", "USER_ID = ?", limit, userId),
+                () -> purgeFriendships(userId, limit),
+                () -> SqlUtils.deleteChunk(jdbcTemplate, "USER_EVENT", "USER_ID = ?", limit, userId));
+        for (IntSupplier stage : stages) {
+            int deleted = stage.getAsInt();
+            if (deleted > 0) {
+                return deleted;
+            }
+        }
+        return 0;
     }
-}
 
+    private int purgeLikes(long userId, int limit) {
+        List<Long> rowIds = new ArrayList<>();
+        List<Long> filmIds = new ArrayList<>();
+        jdbcTemplate.query("SELECT _ROWID_ AS ROW_ID, FILM_ID FROM FILM_LIKE WHERE USER_ID = ? LIMIT ?", rs -> {
+            rowIds.add(rs.getLong("ROW_ID"));
+            filmIds.add(rs.getLong("FILM_ID"));
+        }, userId, limit);
+        if (rowIds.isEmpty()) {
+            return 0;
+        }
+        List<Long> unlikedFilms = SqlUtils.deleteByRowIds(jdbcTemplate, "FILM_LIKE", rowIds, filmIds);
+        if (unlikedFilms.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.update("UPDATE FILM SET LIKES_COUNT = LIKES_COUNT - 1 WHERE FILM_ID IN " +
+                SqlUtils.inClause(unlikedFilms.size()), unlikedFilms.toArray());
+        unlikedFilms.forEach(filmCache::invalidate);
+        SqlUtils.afterCommit(() -> {
+            for (Long filmId : unlikedFilms) {
+                likeGraph.removeLike(filmId, userId);
+                recommendationModel.likeChanged(filmId, userId);
+            }
+        });
+        return unlikedFilms.size();
+    }
+
+    private int purgeVotes(String table, int usefulDelta, long userId, int limit) {
+        List<Long> rowIds = new ArrayList<>();
+        List<Long> reviewIds = new ArrayList<>();
+        jdbcTemplate.query("SELECT _ROWID_ AS ROW_ID, REVIEW_ID FROM " + table + " WHERE USER_ID = ? LIMIT ?", rs -> {
+            rowIds.add(rs.getLong("ROW_ID"));
+            reviewIds.add(rs.getLong("REVIEW_ID"));
+        }, userId, limit);
+        if (rowIds.isEmpty()) {
+            return 0;
+        }
+        List<Long> unvotedReviews = SqlUtils.deleteByRowIds(jdbcTemplate, table, rowIds, reviewIds);
+        if (unvotedReviews.isEmpty()) {
+            return 0;
+        }
+        List<Object> params = new ArrayList<>(unvotedReviews);
+        params.add(0, usefulDelta);
+        jdbcTemplate.update("UPDATE REVIEW SET USEFUL = USEFUL + ? WHERE REVIEW_ID IN " +
+                SqlUtils.inClause(unvotedReviews.size()), params.toArray());
+        return unvotedReviews.size();
+    }
+
+    private int purgeFriendships(long userId, int limit) {
+        List<Long> rowIds = new ArrayList<>();
+        List<long[]> friendships = new ArrayList<>();
+        jdbcTemplate.query("SELECT _ROWID_ AS ROW_ID, USER_FIRST_ID, USER_SECOND_ID FROM FRIENDSHIP " +
+                "WHERE USER_FIRST_ID = ? OR USER_SECOND_ID = ? LIMIT ?", rs -> {
+            rowIds.add(rs.getLong("ROW_ID"));
+            friendships.add(new long[]{rs.getLong("USER_FIRST_ID"), rs.getLong("USER_SECOND_ID")});
+        }, userId, userId, limit);
+        if (rowIds.isEmpty()) {
+            return 0;
+        }
+        List<long[]> removedFriendships = SqlUtils.deleteByRowIds(jdbcTemplate, "FRIENDSHIP", rowIds, friendships);
+        for (long[] friendship : removedFriendships) {
+            friendGraph.removeFriend(friendship[0], friendship[1]);
+        }
+        return removedFriendships.size();
+    }
+
+    @PostConstruct
+    private void loadFriendGraph() {
+        int[] friendshipsCount = {0};
+        friendGraph.reload(sink -> jdbcTemplate.query("SELECT USER_FIRST_ID, USER_SECOND_ID FROM FRIENDSHIP", rs -> {
+            sink.accept(rs.getInt("USER_FIRST_ID"), rs.getInt("USER_SECOND_ID"));
+            friendshipsCount[0]++;
+        }));
+        log.info("Граф дружбы загружен из базы, связей: {}", friendshipsCount[0]);
+    }
+
+    @Override
+    public List<User> findUsersByIds(Collection<Long> ids) {
+        Set<Long> uniqueIds = new LinkedHashSet<>(ids);
+        Map<Long, User> usersById = new HashMap<>();
+        for (List<Long> chunk : Lists.partition(new ArrayList<>(uniqueIds), SqlUtils.IN_CHUNK_SIZE)) {
+            String sqlQuery = "SELECT * FROM \"USER\" WHERE USER_ID IN " + SqlUtils.inClause(chunk.size());
+            jdbcTemplate.query(sqlQuery, this::mapRowToUser, chunk.toArray())
+                    .forEach(user -> usersById.put(user.getId(), user));
+        }
+        List<User> users = new ArrayList<>(usersById.size());
+        for (Long id : uniqueIds) {
+            User user = usersById.get(id);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    private static List<Long> boxed(int[] ids) {
+        return Arrays.stream(ids).asLongStream().boxed().collect(Collectors.toList());
+    }
+
+    private void checkUserExists(long userId) {
+        if (!userExists(userId)) {
+            log.warn("Пользователь с id {} не найден", userId);
+            throw new UserDoesNotExistException();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Списки смежности в виде отсортированных массивов int, адресуемых id вершины.
+ * Массивы не изменяются после публикации (запись создаёт новую копию строки),
+ * поэтому чтение идёт без блокировок, а запись синхронизирована.
+ */
+public class AdjacencyIndex {
+
+    private static final int[] EMPTY = new int[0];
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private volatile AtomicReferenceArray<int[]> rows = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+
+    public int[] get(int id) {
+        AtomicReferenceArray<int[]> current = rows;
+        if (id < 0 || id >= current.length()) {
+            return EMPTY;
+        }
+        int[] row = current.get(id);
+        return row == null ? EMPTY : row;
+    }
+
+    /**
+     * Возвращает по возрастанию id вершин, у которых есть хотя бы один сосед.
+     */
+    public int[] ids() {
+        AtomicReferenceArray<int[]> current = rows;
+        int[] ids = new int[current.length()];
+        int count = 0;
+        for (int id = 0; id < current.length(); id++) {
+            if (current.get(id) != null) {
+                ids[count++] = id;
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    public int degree(int id) {
+        return get(id).length;
+    }
+
+    public boolean contains(int id, int value) {
+        return Arrays.binarySearch(get(id), value) >= 0;
+    }
+
+    public synchronized boolean add(int id, int value) {
+        int[] row = get(id);
+        int position = Arrays.binarySearch(row, value);
+        if (position >= 0) {
+            return false;
+        }
+        int insertAt = -position - 1;
+        int[] newRow = new int[row.length + 1];
+        System.arraycopy(row, 0, newRow, 0, insertAt);
+        newRow[insertAt] = value;
+        System.arraycopy(row, insertAt, newRow, insertAt + 1, row.length - insertAt);
+        ensureCapacity(id).set(id, newRow);
+        return true;
+    }
+
+    public synchronized boolean remove(int id, int value) {
+        int[] row = get(id);
+        int position = Arrays.binarySearch(row, value);
+        if (position < 0) {
+            return false;
+        }
+        int[] newRow = new int[row.length - 1];
+        System.arraycopy(row, 0, newRow, 0, position);
+        System.arraycopy(row, position + 1, newRow, position, row.length - position - 1);
+        rows.set(id, newRow.length == 0 ? null : newRow);
+        return true;
+    }
+
+    public synchronized void replace(int id, int[] sortedRow) {
+        if (sortedRow.length == 0) {
+            removeAll(id);
+        } else {
+            ensureCapacity(id).set(id, sortedRow);
+        }
+    }
+
+    public synchronized int[] removeAll(int id) {
+        int[] row = get(id);
+        if (row.length > 0) {
+            rows.set(id, null);
+        }
+        return row;
+    }
+
+    /**
+     * Строит индекс по парам (вершина, сосед), упакованным в long как {@code id << 32 | value}.
+     * Массив сортируется на месте, повторяющиеся пары пропускаются.
+     */
+    public static AdjacencyIndex fromPairs(long[] pairs, int size) {
+        Arrays.sort(pairs, 0, size);
+        AdjacencyIndex index = new AdjacencyIndex();
+        int start = 0;
+        while (start < size) {
+            int id = (int) (pairs[start] >>> 32);
+            int end = start;
+            while (end < size && (int) (pairs[end] >>> 32) == id) {
+                end++;
+            }
+            int[] row = new int[end - start];
+            int count = 0;
+            for (int i = start; i < end; i++) {
+                if (i == start || pairs[i] != pairs[i - 1]) {
+                    row[count++] = (int) pairs[i];
+                }
+            }
+            index.ensureCapacity(id).set(id, Arrays.copyOf(row, count));
+            start = end;
+        }
+        return index;
+    }
+
+    public static long pair(int id, int value) {
+        return ((long) id << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Количество общих элементов двух отсортированных массивов за один линейный проход.
+     */
+    public static int intersectionSize(int[] first, int[] second) {
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    public static int[] intersection(int[] first, int[] second) {
+        int[] result = new int[Math.min(first.length, second.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                result[count++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private AtomicReferenceArray<int[]> ensureCapacity(int id) {
+        AtomicReferenceArray<int[]> current = rows;
+        if (id < current.length()) {
+            return current;
+        }
+        int newLength = current.length();
+        while (newLength <= id) {
+            newLength *= 2;
+        }
+        AtomicReferenceArray<int[]> grown = new AtomicReferenceArray<>(newLength);
+        for (int i = 0; i < current.length(); i++) {
+            grown.set(i, current.get(i));
+        }
+        rows = grown;
+        return grown;
+    }
+}
@@ -0,0 +1,260 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.SuggestionType;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Инвертированный индекс по n-граммам (длиной от 1 до 3 символов) названий фильмов и имён режиссёров.
+ * Позволяет искать подстроку без полного просмотра таблиц: кандидаты берутся из пересечения списков
+ * по n-граммам запроса и затем проверяются на точное вхождение.
+ * Для подсказок при вводе те же названия хранятся в отсортированной карте по началу каждого слова.
+ */
+@Component
+public class FilmSearchIndex {
+
+    public static final int WORD_MATCH = 2;
+    public static final int SUBSTRING_MATCH = 1;
+    private static final int GRAM_SIZE = 3;
+
+    private final Map<Long, String> titles = new HashMap<>();
+    private final Map<String, Set<Long>> titleGrams = new HashMap<>();
+    private final Map<Integer, String> directorNames = new HashMap<>();
+    private final Map<String, Set<Integer>> directorGrams = new HashMap<>();
+    private final Map<Integer, Set<Long>> filmsByDirector = new HashMap<>();
+    private final Map<Long, Set<Integer>> directorsByFilm = new HashMap<>();
+    private final NavigableMap<String, Suggestion> suggestions = new TreeMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public void indexFilm(long filmId, String title, Collection<Integer> directorIds) {
+        lock.writeLock().lock();
+        try {
+            removeFilmUnlocked(filmId);
+            String normalized = normalize(title);
+            titles.put(filmId, normalized);
+            addGrams(titleGrams, normalized, filmId);
+            addSuggestion(new Suggestion(SuggestionType.FILM, filmId, title), normalized);
+            for (Integer directorId : directorIds) {
+                filmsByDirector.computeIfAbsent(directorId, id -> new HashSet<>()).add(filmId);
+                directorsByFilm.computeIfAbsent(filmId, id -> new HashSet<>()).add(directorId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(long filmId) {
+        lock.writeLock().lock();
+        try {
+            removeFilmUnlocked(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void indexDirector(int directorId, String name) {
+        lock.writeLock().lock();
+        try {
+            String normalized = normalize(name);
+            String previous = directorNames.put(directorId, normalized);
+            if (previous != null) {
+                removeGrams(directorGrams, previous, directorId);
+                removeSuggestion(SuggestionType.DIRECTOR, directorId, previous);
+            }
+            addGrams(directorGrams, normalized, directorId);
+            addSuggestion(new Suggestion(SuggestionType.DIRECTOR, directorId, name), normalized);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeDirector(int directorId) {
+        lock.writeLock().lock();
+        try {
+            String name = directorNames.remove(directorId);
+            if (name != null) {
+                removeGrams(directorGrams, name, directorId);
+                removeSuggestion(SuggestionType.DIRECTOR, directorId, name);
+            }
+            Set<Long> films = filmsByDirector.remove(directorId);
+            if (films != null) {
+                for (Long filmId : films) {
+                    Set<Integer> directors = directorsByFilm.get(filmId);
+                    directors.remove(directorId);
+                    if (directors.isEmpty()) {
+                        directorsByFilm.remove(filmId);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает id подходящих фильмов вместе с их релевантностью: {@link #WORD_MATCH}, если запрос
+     * совпал с началом слова, и {@link #SUBSTRING_MATCH}, если найден внутри слова.
+     */
+    public Map<Long, Integer> search(String query, boolean byTitle, boolean byDirector) {
+        String normalized = normalize(query);
+        Map<Long, Integer> result = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            if (byTitle) {
+                for (Long filmId : findCandidates(titleGrams, titles, normalized)) {
+                    result.merge(filmId, relevance(titles.get(filmId), normalized), Math::max);
+                }
+            }
+            if (byDirector) {
+                for (Integer directorId : findCandidates(directorGrams, directorNames, normalized)) {
+                    int relevance = relevance(directorNames.get(directorId), normalized);
+                    for (Long filmId : filmsByDirector.getOrDefault(directorId, Collections.emptySet())) {
+                        result.merge(filmId, relevance, Math::max);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Возвращает не более {@code count} фильмов и режиссёров, у которых какое-либо слово названия
+     * начинается с {@code prefix}, в алфавитном порядке совпавшего окончания.
+     */
+    public List<Suggestion> suggest(String prefix, int count) {
+        String normalized = normalize(prefix);
+        Set<Suggestion> result = new LinkedHashSet<>();
+        lock.readLock().lock();
+        try {
+            for (Suggestion suggestion : suggestions.subMap(normalized, true, normalized + Character.MAX_VALUE,
+                    false).values()) {
+                if (result.size() == count) {
+                    break;
+                }
+                result.add(suggestion);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new ArrayList<>(result);
+    }
+
+    private void removeFilmUnlocked(long filmId) {
+        String title = titles.remove(filmId);
+        if (title != null) {
+            removeGrams(titleGrams, title, filmId);
+            removeSuggestion(SuggestionType.FILM, filmId, title);
+        }
+        Set<Integer> directors = directorsByFilm.remove(filmId);
+        if (directors != null) {
+            for (Integer directorId : directors) {
+                Set<Long> films = filmsByDirector.get(directorId);
+                films.remove(filmId);
+                if (films.isEmpty()) {
+                    filmsByDirector.remove(directorId);
+                }
+            }
+        }
+    }
+
+    private static <T> Set<T> findCandidates(Map<String, Set<T>> grams, Map<T, String> documents, String query) {
+        if (query.isEmpty()) {
+            return documents.keySet();
+        }
+        if (query.length() <= GRAM_SIZE) {
+            return grams.getOrDefault(query, Collections.emptySet());
+        }
+        List<Set<T>> postings = new ArrayList<>();
+        for (int i = 0; i + GRAM_SIZE <= query.length(); i++) {
+            Set<T> posting = grams.get(query.substring(i, i + GRAM_SIZE));
+            if (posting == null) {
+                return Collections.emptySet();
+            }
+            postings.add(posting);
+        }
+        postings.sort(Comparator.comparingInt(Set::size));
+        Set<T> candidates = new HashSet<>();
+        for (T id : postings.get(0)) {
+            if (documents.get(id).contains(query)) {
+                candidates.add(id);
+            }
+        }
+        return candidates;
+    }
+
+    private void addSuggestion(Suggestion suggestion, String normalized) {
+        for (int start : wordStarts(normalized)) {
+            suggestions.put(suggestionKey(normalized, start, suggestion.getType(), suggestion.getId()), suggestion);
+        }
+    }
+
+    private void removeSuggestion(SuggestionType type, long id, String normalized) {
+        for (int start : wordStarts(normalized)) {
+            suggestions.remove(suggestionKey(normalized, start, type, id));
+        }
+    }
+
+    private static String suggestionKey(String normalized, int start, SuggestionType type, long id) {
+        return normalized.substring(start) + '\u0000' + type + ':' + id;
+    }
+
+    private static List<Integer> wordStarts(String text) {
+        List<Integer> starts = new ArrayList<>();
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isLetterOrDigit(text.charAt(i))
+                    && (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)))) {
+                starts.add(i);
+            }
+        }
+        return starts;
+    }
+
+    private static int relevance(String text, String query) {
+        int index = text.indexOf(query);
+        while (index >= 0) {
+            if (index == 0 || !Character.isLetterOrDigit(text.charAt(index - 1))) {
+                return WORD_MATCH;
+            }
+            index = text.indexOf(query, index + 1);
+        }
+        return SUBSTRING_MATCH;
+    }
+
+    private static <T> void addGrams(Map<String, Set<T>> grams, String text, T id) {
+        for (String gram : gramsOf(text)) {
+            grams.computeIfAbsent(gram, g -> new HashSet<>()).add(id);
+        }
+    }
+
+    private static <T> void removeGrams(Map<String, Set<T>> grams, String text, T id) {
+        for (String gram : gramsOf(text)) {
+            Set<T> posting = grams.get(gram);
+            if (posting != null) {
+                posting.remove(id);
+                if (posting.isEmpty()) {
+                    grams.remove(gram);
+                }
+            }
+        }
+    }
+
+    private static Set<String> gramsOf(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i < text.length(); i++) {
+            for (int length = 1; length <= GRAM_SIZE && i + length <= text.length(); length++) {
+                grams.add(text.substring(i, i + length));
+            }
+        }
+        return grams;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,90 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Граф дружбы в памяти: для каждого пользователя — отсортированный массив id его друзей
+ * и отсортированный массив id тех, кто добавил его в друзья. Загружается из таблицы FRIENDSHIP
+ * при старте и обновляется при добавлении и удалении друзей.
+ */
+@Component
+public class FriendGraph {
+
+    private volatile AdjacencyIndex friendsByUser = new AdjacencyIndex();
+    private volatile AdjacencyIndex followersByUser = new AdjacencyIndex();
+
+    public interface FriendshipConsumer {
+        void accept(int userId, int friendId);
+    }
+
+    public int[] getFriends(long userId) {
+        return friendsByUser.get((int) userId);
+    }
+
+    public int[] getFollowers(long userId) {
+        return followersByUser.get((int) userId);
+    }
+
+    public int getFollowersCount(long userId) {
+        return followersByUser.degree((int) userId);
+    }
+
+    public boolean isFriend(long userId, long friendId) {
+        return friendsByUser.contains((int) userId, (int) friendId);
+    }
+
+    public synchronized boolean addFriend(long userId, long friendId) {
+        if (!friendsByUser.add((int) userId, (int) friendId)) {
+            return false;
+        }
+        followersByUser.add((int) friendId, (int) userId);
+        return true;
+    }
+
+    public synchronized boolean removeFriend(long userId, long friendId) {
+        if (!friendsByUser.remove((int) userId, (int) friendId)) {
+            return false;
+        }
+        followersByUser.remove((int) friendId, (int) userId);
+        return true;
+    }
+
+    /**
+     * Удаляет пользователя из графа вместе со всеми связями и возвращает id тех,
+     * у кого он был в друзьях.
+     */
+    public synchronized int[] removeUser(long userId) {
+        int id = (int) userId;
+        for (int friendId : friendsByUser.removeAll(id)) {
+            followersByUser.remove(friendId, id);
+        }
+        int[] followers = followersByUser.removeAll(id);
+        for (int followerId : followers) {
+            friendsByUser.remove(followerId, id);
+        }
+        return followers;
+    }
+
+    public void reload(Consumer<FriendshipConsumer> source) {
+        long[][] pairs = {new long[1024], new long[1024]};
+        int[] size = {0};
+        source.accept((userId, friendId) -> {
+            if (size[0] == pairs[0].length) {
+                pairs[0] = Arrays.copyOf(pairs[0], size[0] * 2);
+                pairs[1] = Arrays.copyOf(pairs[1], size[0] * 2);
+            }
+            pairs[0][size[0]] = AdjacencyIndex.pair(userId, friendId);
+            pairs[1][size[0]] = AdjacencyIndex.pair(friendId, userId);
+            size[0]++;
+        });
+        AdjacencyIndex newFriendsByUser = AdjacencyIndex.fromPairs(pairs[0], size[0]);
+        AdjacencyIndex newFollowersByUser = AdjacencyIndex.fromPairs(pairs[1], size[0]);
+        synchronized (this) {
+            friendsByUser = newFriendsByUser;
+            followersByUser = newFollowersByUser;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Граф лайков в памяти: для каждого фильма — отсортированный массив id лайкнувших пользователей,
+ * для каждого пользователя — отсортированный массив id лайкнутых фильмов.
+ * Загружается из таблицы FILM_LIKE и обновляется при каждом добавлении или удалении лайка.
+ */
+@Component
+public class LikeGraph {
+
+    private volatile AdjacencyIndex usersByFilm = new AdjacencyIndex();
+    private volatile AdjacencyIndex filmsByUser = new AdjacencyIndex();
+    private List<Runnable> pendingChanges;
+
+    public interface LikeConsumer {
+        void accept(int filmId, int userId);
+    }
+
+    public int[] getLikers(long filmId) {
+        return usersByFilm.get((int) filmId);
+    }
+
+    public int[] getLikedFilms(long userId) {
+        return filmsByUser.get((int) userId);
+    }
+
+    public int[] getUsers() {
+        return filmsByUser.ids();
+    }
+
+    public int[] getFilms() {
+        return usersByFilm.ids();
+    }
+
+    public int getLikesCount(long filmId) {
+        return usersByFilm.degree((int) filmId);
+    }
+
+    public boolean isLiked(long filmId, long userId) {
+        return usersByFilm.contains((int) filmId, (int) userId);
+    }
+
+    public synchronized boolean addLike(long filmId, long userId) {
+        if (pendingChanges != null) {
+            pendingChanges.add(() -> applyAddLike((int) filmId, (int) userId));
+        }
+        return applyAddLike((int) filmId, (int) userId);
+    }
+
+    public synchronized boolean removeLike(long filmId, long userId) {
+        if (pendingChanges != null) {
+            pendingChanges.add(() -> applyRemoveLike((int) filmId, (int) userId));
+        }
+        return applyRemoveLike((int) filmId, (int) userId);
+    }
+
+    /**
+     * Удаляет все лайки пользователя и возвращает id фильмов, которые он лайкал.
+     */
+    public synchronized int[] removeUser(long userId) {
+        if (pendingChanges != null) {
+            pendingChanges.add(() -> applyRemoveUser((int) userId));
+        }
+        return applyRemoveUser((int) userId);
+    }
+
+    /**
+     * Удаляет все лайки фильма и возвращает id пользователей, которые его лайкали.
+     */
+    public synchronized int[] removeFilm(long filmId) {
+        if (pendingChanges != null) {
+            pendingChanges.add(() -> applyRemoveFilm((int) filmId));
+        }
+        return applyRemoveFilm((int) filmId);
+    }
+
+    /**
+     * Полностью перестраивает граф по снимку лайков. Изменения, пришедшие во время чтения снимка,
+     * записываются и применяются поверх него.
+     */
+    public void reload(Consumer<LikeConsumer> source) {
+        synchronized (this) {
+            pendingChanges = new ArrayList<>();
+        }
+        long[][] pairs = {new long[1024], new long[1024]};
+        int[] size = {0};
+        source.accept((filmId, userId) -> {
+            if (size[0] == pairs[0].length) {
+                pairs[0] = Arrays.copyOf(pairs[0], size[0] * 2);
+                pairs[1] = Arrays.copyOf(pairs[1], size[0] * 2);
+            }
+            pairs[0][size[0]] = AdjacencyIndex.pair(filmId, userId);
+            pairs[1][size[0]] = AdjacencyIndex.pair(userId, filmId);
+            size[0]++;
+        });
+        AdjacencyIndex newUsersByFilm = AdjacencyIndex.fromPairs(pairs[0], size[0]);
+        AdjacencyIndex newFilmsByUser = AdjacencyIndex.fromPairs(pairs[1], size[0]);
+        synchronized (this) {
+            usersByFilm = newUsersByFilm;
+            filmsByUser = newFilmsByUser;
+            pendingChanges.forEach(Runnable::run);
+            pendingChanges = null;
+        }
+    }
+
+    private boolean applyAddLike(int filmId, int userId) {
+        if (!usersByFilm.add(filmId, userId)) {
+            return false;
+        }
+        filmsByUser.add(userId, filmId);
+        return true;
+    }
+
+    private boolean applyRemoveLike(int filmId, int userId) {
+        if (!usersByFilm.remove(filmId, userId)) {
+            return false;
+        }
+        filmsByUser.remove(userId, filmId);
+        return true;
+    }
+
+    private int[] applyRemoveUser(int userId) {
+        int[] films = filmsByUser.removeAll(userId);
+        for (int filmId : films) {
+            usersByFilm.remove(filmId, userId);
+        }
+        return films;
+    }
+
+    private int[] applyRemoveFilm(int filmId) {
+        int[] users = usersByFilm.removeAll(filmId);
+        for (int userId : users) {
+            filmsByUser.remove(userId, filmId);
+        }
+        return users;
+    }
+}
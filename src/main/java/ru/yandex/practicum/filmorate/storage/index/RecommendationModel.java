@@ -0,0 +1,236 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Модель рекомендаций поверх {@link LikeGraph}. Хранит для каждого пользователя трёх соседей с наибольшим
+ * числом общих лайков, а для каждого фильма — десять фильмов, чаще всего лайкнутых теми же пользователями.
+ * Соседи полностью пересчитываются по расписанию, а между пересчётами лайк помечает устаревшими
+ * только затронутых пользователей и фильмы: их соседи пересчитываются при следующем чтении.
+ */
+@Slf4j
+@Component
+public class RecommendationModel {
+
+    private static final int NEIGHBOURS_COUNT = 3;
+    private static final int SIMILAR_FILMS_COUNT = 10;
+
+    private final LikeGraph likeGraph;
+    private volatile AdjacencyIndex userNeighbours = new AdjacencyIndex();
+    private volatile AdjacencyIndex similarFilms = new AdjacencyIndex();
+    private final Map<Integer, Long> staleUsers = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> staleFilms = new ConcurrentHashMap<>();
+    private final AtomicLong changeSequence = new AtomicLong();
+    private volatile boolean rebuilding;
+
+    public RecommendationModel(LikeGraph likeGraph) {
+        this.likeGraph = likeGraph;
+    }
+
+    /**
+     * Помечает устаревшими соседей пользователя и всех, кто лайкал тот же фильм, а также похожие фильмы
+     * для этого фильма и остальных фильмов пользователя. Вызывается после изменения графа лайков.
+     */
+    public void likeChanged(long filmId, long userId) {
+        long sequence = changeSequence.incrementAndGet();
+        staleUsers.put((int) userId, sequence);
+        for (int likerId : likeGraph.getLikers(filmId)) {
+            staleUsers.put(likerId, sequence);
+        }
+        staleFilms.put((int) filmId, sequence);
+        for (int likedFilmId : likeGraph.getLikedFilms(userId)) {
+            staleFilms.put(likedFilmId, sequence);
+        }
+    }
+
+    public void userRemoved(long userId, int[] likedFilms) {
+        long sequence = changeSequence.incrementAndGet();
+        userNeighbours.removeAll((int) userId);
+        staleUsers.remove((int) userId);
+        for (int filmId : likedFilms) {
+            staleFilms.put(filmId, sequence);
+            for (int likerId : likeGraph.getLikers(filmId)) {
+                staleUsers.put(likerId, sequence);
+            }
+        }
+    }
+
+    public void filmRemoved(long filmId, int[] likers) {
+        long sequence = changeSequence.incrementAndGet();
+        similarFilms.removeAll((int) filmId);
+        staleFilms.remove((int) filmId);
+        for (int likerId : likers) {
+            staleUsers.put(likerId, sequence);
+            for (int likedFilmId : likeGraph.getLikedFilms(likerId)) {
+                staleFilms.put(likedFilmId, sequence);
+            }
+        }
+    }
+
+    /**
+     * Пересчитывает соседей всех пользователей и фильмов по текущему графу лайков и публикует их разом.
+     * Пометки, поставленные во время пересчёта, сохраняются: такие соседи пересчитаются при чтении.
+     */
+    @Scheduled(fixedDelayString = "${filmorate.recommendations.rebuild-interval-ms}",
+            initialDelayString = "${filmorate.recommendations.rebuild-interval-ms}")
+    public synchronized void rebuild() {
+        rebuilding = true;
+        try {
+            long startSequence = changeSequence.get();
+            AdjacencyIndex newUserNeighbours = new AdjacencyIndex();
+            int[] users = likeGraph.getUsers();
+            for (int userId : users) {
+                newUserNeighbours.replace(userId, findUserNeighbours(userId));
+            }
+            AdjacencyIndex newSimilarFilms = new AdjacencyIndex();
+            int[] films = likeGraph.getFilms();
+            for (int filmId : films) {
+                newSimilarFilms.replace(filmId, findSimilarFilms(filmId));
+            }
+            userNeighbours = newUserNeighbours;
+            similarFilms = newSimilarFilms;
+            staleUsers.values().removeIf(sequence -> sequence <= startSequence);
+            staleFilms.values().removeIf(sequence -> sequence <= startSequence);
+            log.info("Модель рекомендаций пересчитана, пользователей: {}, фильмов: {}", users.length, films.length);
+        } finally {
+            rebuilding = false;
+        }
+    }
+
+    /**
+     * Возвращает id фильмов, которые лайкнули ближайшие соседи пользователя, а он сам — нет.
+     */
+    public Set<Long> recommend(long userId) {
+        int[] likedFilms = likeGraph.getLikedFilms(userId);
+        Set<Long> recommended = new TreeSet<>();
+        for (int neighbourId : getUserNeighbours((int) userId)) {
+            for (int filmId : likeGraph.getLikedFilms(neighbourId)) {
+                if (Arrays.binarySearch(likedFilms, filmId) < 0) {
+                    recommended.add((long) filmId);
+                }
+            }
+        }
+        return recommended;
+    }
+
+    /**
+     * Возвращает id фильмов, похожих на данный, по убыванию числа общих лайкнувших пользователей.
+     */
+    public List<Long> findSimilar(long filmId, int count) {
+        int[] likers = likeGraph.getLikers(filmId);
+        int[] similar = getSimilarFilms((int) filmId);
+        int[] overlaps = new int[similar.length];
+        List<Integer> positions = new ArrayList<>(similar.length);
+        for (int i = 0; i < similar.length; i++) {
+            overlaps[i] = AdjacencyIndex.intersectionSize(likers, likeGraph.getLikers(similar[i]));
+            positions.add(i);
+        }
+        positions.sort(Comparator.comparingInt((Integer i) -> overlaps[i]).reversed()
+                .thenComparingInt(i -> similar[i]));
+        List<Long> result = new ArrayList<>(Math.min(count, similar.length));
+        for (Integer position : positions) {
+            if (result.size() == count || overlaps[position] == 0) {
+                break;
+            }
+            result.add((long) similar[position]);
+        }
+        return result;
+    }
+
+    private int[] getUserNeighbours(int userId) {
+        return resolve(userId, staleUsers, userNeighbours, this::findUserNeighbours);
+    }
+
+    private int[] getSimilarFilms(int filmId) {
+        return resolve(filmId, staleFilms, similarFilms, this::findSimilarFilms);
+    }
+
+    /**
+     * Возвращает сохранённых соседей или, если они помечены устаревшими, считает их заново без блокировок.
+     * Результат сохраняется только вне полного пересчёта, а пометка снимается, только если за время
+     * вычисления её не поставили снова.
+     */
+    private int[] resolve(int id, Map<Integer, Long> stale, AdjacencyIndex index, IntFunction<int[]> compute) {
+        Long sequence = stale.get(id);
+        if (sequence == null) {
+            return index.get(id);
+        }
+        int[] neighbours = compute.apply(id);
+        if (!rebuilding) {
+            index.replace(id, neighbours);
+            stale.remove(id, sequence);
+        }
+        return neighbours;
+    }
+
+    private int[] findUserNeighbours(int userId) {
+        return findNeighbours(userId, likeGraph.getLikedFilms(userId), likeGraph::getLikers, NEIGHBOURS_COUNT);
+    }
+
+    private int[] findSimilarFilms(int filmId) {
+        return findNeighbours(filmId, likeGraph.getLikers(filmId), likeGraph::getLikedFilms, SIMILAR_FILMS_COUNT);
+    }
+
+    /**
+     * Считает пересечения без коллекций-обёрток: вершины, смежные с каждым элементом {@code keys},
+     * собираются в один массив, сортируются, и длина каждой серии одинаковых id равна числу общих элементов.
+     * Возвращает отсортированные id {@code count} вершин с наибольшим пересечением, при равенстве — с меньшим id.
+     */
+    private static int[] findNeighbours(int id, int[] keys, IntFunction<int[]> adjacent, int count) {
+        int total = 0;
+        int[][] rows = new int[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            rows[i] = adjacent.apply(keys[i]);
+            total += rows[i].length;
+        }
+        int[] candidates = new int[total];
+        int size = 0;
+        for (int[] row : rows) {
+            System.arraycopy(row, 0, candidates, size, row.length);
+            size += row.length;
+        }
+        Arrays.sort(candidates);
+        int[] bestIds = new int[count];
+        int[] bestCounts = new int[count];
+        int start = 0;
+        while (start < size) {
+            int end = start;
+            while (end < size && candidates[end] == candidates[start]) {
+                end++;
+            }
+            int candidate = candidates[start];
+            int overlap = end - start;
+            if (candidate != id && overlap > bestCounts[count - 1]) {
+                int position = count - 1;
+                while (position > 0 && overlap > bestCounts[position - 1]) {
+                    bestCounts[position] = bestCounts[position - 1];
+                    bestIds[position] = bestIds[position - 1];
+                    position--;
+                }
+                bestCounts[position] = overlap;
+                bestIds[position] = candidate;
+            }
+            start = end;
+        }
+        int found = 0;
+        while (found < count && bestCounts[found] > 0) {
+            found++;
+        }
+        int[] result = Arrays.copyOf(bestIds, found);
+        Arrays.sort(result);
+        return result;
+    }
+}
@@ -3,11 +3,18 @@ package ru.yandex.practicum.filmorate.storage.inmemory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.EventOperation;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
+import ru.yandex.practicum.filmorate.model.Suggestion;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.index.FilmSearchIndex;
 
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 
 @Component("inMemoryFilmStorage")
@@ -21,24 +28,48 @@ public class InMemoryFilmStorage implements FilmStorage {
     }
 
     private final Map<Long, Film> films = new HashMap<>();
+    private final FilmSearchIndex searchIndex = new FilmSearchIndex();
 
     @Override
-    public Map<Long, Film> getFilms() {
-        return films;
+    public List<Film> getFilms(long afterId, int limit) {
+        return films.values().stream()
+                .filter(film -> film.getId() > afterId)
+                .sorted(Comparator.comparing(Film::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void exportFilms(Consumer<Film> action) {
+        films.values().forEach(action);
     }
 
     @Override
     public Film create(Film film) {
         films.put(film.getId(), film);
+        indexFilm(film);
         return film;
     }
 
+    @Override
+    public List<Long> createFilms(List<Film> films) {
+        return films.stream()
+                .map(film -> create(film).getId())
+                .collect(Collectors.toList());
+    }
+
     @Override
     public Film update(Film film) {
         films.put(film.getId(), film);
+        indexFilm(film);
         return film;
     }
 
+    @Override
+    public boolean filmExists(long id) {
+        return films.containsKey(id);
+    }
+
     @Override
     public Film findFilmById(long id) {
         if (films.containsKey(id)) {
@@ -63,14 +94,50 @@ public class InMemoryFilmStorage implements FilmStorage {
         }
     }
 
+    @Override
+    public List<LikeOperation> applyLikes(Collection<LikeOperation> operations) {
+        List<LikeOperation> applied = new ArrayList<>();
+        for (LikeOperation operation : operations) {
+            Film film = findFilmById(operation.getFilmId());
+            if (film == null || userStorage.findUserById(operation.getUserId()) == null) {
+                continue;
+            }
+            boolean changed = operation.getOperation() == EventOperation.ADD
+                    ? film.getLikes().add(operation.getUserId())
+                    : film.getLikes().remove(operation.getUserId());
+            if (changed) {
+                applied.add(operation);
+            }
+        }
+        return applied;
+    }
+
     @Override
     public List<Film> getFilmsByDirectorOrTitle(String query, String director, String title) {
         return null;
     }
 
+    @Override
+    public List<Suggestion> getSuggestions(String prefix, int count) {
+        return searchIndex.suggest(prefix, count);
+    }
 
     public void deleteFilm(long filmId) {
         films.remove(filmId);
+        searchIndex.removeFilm(filmId);
+    }
+
+    private void indexFilm(Film film) {
+        for (Director director : film.getDirectors()) {
+            searchIndex.indexDirector(director.getId(), director.getName());
+        }
+        searchIndex.indexFilm(film.getId(), film.getName(),
+                film.getDirectors().stream().map(Director::getId).collect(Collectors.toList()));
+    }
+
+    @Override
+    public int purgeFilmDependents(long filmId, int limit) {
+        return 0;
     }
 
     @Override
@@ -82,4 +149,19 @@ public class InMemoryFilmStorage implements FilmStorage {
     public List<Film> getRecommendations(long userId) {
         return null; //inmemory больше не поддерживаем, поэтому просто заглушка
     }
+
+    @Override
+    public List<Film> getSimilarFilms(long filmId, int count) {
+        return new ArrayList<>();
+    }
+
+    @Override
+    public List<Film> getMostPopularFilms(int count, Integer genreId, Integer year) {
+        return films.values().stream()
+                .filter(film -> genreId == null || film.getGenres().stream().anyMatch(g -> g.getId() == genreId))
+                .filter(film -> year == null || film.getReleaseDate().getYear() == year)
+                .sorted((f1, f2) -> f2.getLikes().size() - f1.getLikes().size())
+                .limit(count)
+                .collect(Collectors.toList());
+    }
 }
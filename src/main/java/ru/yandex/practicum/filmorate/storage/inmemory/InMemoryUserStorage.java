@@ -6,6 +6,7 @@ import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 @Component("inMemoryUserStorage")
 public class InMemoryUserStorage implements UserStorage {
@@ -13,8 +14,12 @@ public class InMemoryUserStorage implements UserStorage {
     private final Map<Long, User> users = new HashMap<>();
 
     @Override
-    public Map<Long, User> getUsers() {
-        return users;
+    public List<User> getUsers(long afterId, int limit) {
+        return users.values().stream()
+                .filter(user -> user.getId() > afterId)
+                .sorted(Comparator.comparing(User::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
     }
 
     @Override
@@ -29,6 +34,19 @@ public class InMemoryUserStorage implements UserStorage {
         return user;
     }
 
+    @Override
+    public boolean userExists(long id) {
+        return users.containsKey(id);
+    }
+
+    @Override
+    public List<User> findUsersByIds(Collection<Long> ids) {
+        return new LinkedHashSet<>(ids).stream()
+                .filter(users::containsKey)
+                .map(users::get)
+                .collect(Collectors.toList());
+    }
+
     @Override
     public User findUserById(long id) {
         if (users.containsKey(id)) {
@@ -87,4 +105,9 @@ public class InMemoryUserStorage implements UserStorage {
     public void deleteUser(long userId) {
         users.remove(userId);
     }
+
+    @Override
+    public int purgeUserDependents(long userId, int limit) {
+        return 0;
+    }
 }
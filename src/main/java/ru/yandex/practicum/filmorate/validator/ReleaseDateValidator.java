@@ -7,6 +7,6 @@ import java.time.LocalDate;
 public class ReleaseDateValidator implements ConstraintValidator<ReleaseDateValidation, LocalDate> {
 
     public boolean isValid(LocalDate releaseDate, ConstraintValidatorContext cxt) {
-        return !releaseDate.isBefore(LocalDate.of(1895, 12, 28));
+        return releaseDate == null || !releaseDate.isBefore(LocalDate.of(1895, 12, 28));
     }
 }
@@ -25,6 +25,9 @@ CREATE TABLE IF NOT EXISTS PUBLIC."USER" (
 	CONSTRAINT USER_PK PRIMARY KEY (USER_ID)
 );
 
+CREATE UNIQUE INDEX IF NOT EXISTS USER_EMAIL_UNIQUE_IDX ON PUBLIC."USER" (EMAIL);
+CREATE UNIQUE INDEX IF NOT EXISTS USER_LOGIN_UNIQUE_IDX ON PUBLIC."USER" (LOGIN);
+
 CREATE TABLE IF NOT EXISTS PUBLIC.FRIENDSHIP (
 	USER_FIRST_ID INTEGER NOT NULL,
 	USER_SECOND_ID INTEGER NOT NULL,
@@ -53,11 +56,14 @@ CREATE TABLE IF NOT EXISTS PUBLIC.FILM (
 	RELEASE_DATE DATE NOT NULL,
 	DURATION INTEGER NOT NULL,
 	RATING_ID INTEGER NOT NULL,
+	LIKES_COUNT INTEGER NOT NULL DEFAULT 0,
 	CONSTRAINT FILM_PK PRIMARY KEY (FILM_ID),
 	CONSTRAINT FILM_FK FOREIGN KEY (RATING_ID) REFERENCES PUBLIC.RATING(RATING_ID)
 	ON DELETE CASCADE ON UPDATE CASCADE
 );
 
+CREATE INDEX IF NOT EXISTS FILM_LIKES_COUNT_IDX ON PUBLIC.FILM (LIKES_COUNT DESC, FILM_ID);
+
 CREATE TABLE IF NOT EXISTS PUBLIC.FILM_LIKE (
 	FILM_ID INTEGER NOT NULL,
 	USER_ID INTEGER NOT NULL,
@@ -78,6 +84,8 @@ CREATE TABLE IF NOT EXISTS PUBLIC.FILM_GENRE (
 	ON DELETE CASCADE ON UPDATE CASCADE
 );
 
+CREATE INDEX IF NOT EXISTS FILM_GENRE_GENRE_IDX ON PUBLIC.FILM_GENRE (GENRE_ID, FILM_ID);
+
 
 	CREATE TABLE IF NOT EXISTS PUBLIC.REVIEW (
 	REVIEW_ID INTEGER NOT NULL AUTO_INCREMENT,
@@ -93,6 +101,9 @@ CREATE TABLE IF NOT EXISTS PUBLIC.FILM_GENRE (
 	ON DELETE CASCADE ON UPDATE CASCADE
 );
 
+CREATE INDEX IF NOT EXISTS REVIEW_FILM_USEFUL_IDX ON PUBLIC.REVIEW (FILM_ID, USEFUL DESC, REVIEW_ID);
+CREATE INDEX IF NOT EXISTS REVIEW_USEFUL_IDX ON PUBLIC.REVIEW (USEFUL DESC, REVIEW_ID);
+
     CREATE TABLE IF NOT EXISTS PUBLIC.REVIEW_LIKE (
     REVIEW_ID INTEGER NOT NULL,
     USER_ID INTEGER NOT NULL,
@@ -148,3 +159,5 @@ CREATE TABLE IF NOT EXISTS PUBLIC.USER_EVENT (
         ENTITY_ID INTEGER
     );
 
+
+CREATE INDEX IF NOT EXISTS USER_EVENT_USER_TIME_IDX ON PUBLIC.USER_EVENT (USER_ID, TIME_ADD, EVENT_ID);
@@ -1,23 +1,43 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.exception.FilmDoesNotExistException;
+import ru.yandex.practicum.filmorate.exception.UserDoesNotExistException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.CacheStats;
 import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.EventOperation;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmImportResult;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeIngestResult;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.SuggestionType;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.DirectorService;
 import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
 import javax.validation.Validation;
 import javax.validation.Validator;
 import javax.validation.ValidatorFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -30,6 +50,9 @@ public class FilmControllerTest {
     private final FilmService filmService;
     private final UserService userService;
     private final DirectorService directorService;
+    private final FilmController filmController;
+    private final CacheController cacheController;
+    private final ObjectMapper objectMapper;
     private static Validator validator;
 
     static {
@@ -250,7 +273,7 @@ public class FilmControllerTest {
     @Test
     public void shouldGetMostPopularFilms() {
         User user = User.builder()
-                .login("Iris")
+                .login("Iris2")
                 .name("Melissa")
                 .email("mellow@mail.ru")
                 .birthday(LocalDate.of(2000, 8, 15))
@@ -258,7 +281,7 @@ public class FilmControllerTest {
         userService.create(user);
 
         User secondUser = User.builder()
-                .login("Iris")
+                .login("Iris3")
                 .name("Melissa")
                 .email("meow@mail.ru")
                 .birthday(LocalDate.of(2000, 8, 15))
@@ -277,7 +300,148 @@ public class FilmControllerTest {
         filmService.addLike(film.getId(), user.getId());
         filmService.addLike(film.getId(), secondUser.getId());
 
-        assertEquals(List.of(filmService.findFilmById(film.getId())), filmService.getMostPopularFilms(1));
+        assertEquals(List.of(filmService.findFilmById(film.getId())), filmService.getMostPopularFilms(1, null, null));
+    }
+
+    @Test
+    public void shouldGetMostPopularFilmsByGenreAndYear() {
+        User user = User.builder()
+                .login("Popular")
+                .name("Melissa")
+                .email("popular@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(user);
+
+        Film film = Film.builder()
+                .name("Матрица")
+                .description("Добро пожаловать в реальный мир")
+                .duration(136)
+                .releaseDate(LocalDate.of(1999, 3, 31))
+                .mpa(new Mpa(4, "R"))
+                .build();
+        film.getGenres().add(new Genre(6, "Боевик"));
+        filmService.create(film);
+
+        Film otherYearFilm = Film.builder()
+                .name("Матрица: Перезагрузка")
+                .description("Продолжение")
+                .duration(138)
+                .releaseDate(LocalDate.of(2003, 5, 7))
+                .mpa(new Mpa(4, "R"))
+                .build();
+        otherYearFilm.getGenres().add(new Genre(6, "Боевик"));
+        filmService.create(otherYearFilm);
+
+        filmService.addLike(otherYearFilm.getId(), user.getId());
+
+        List<Film> popular = filmService.getMostPopularFilms(10, 6, 1999);
+
+        assertEquals(1, popular.size());
+        assertEquals(film.getId(), popular.get(0).getId());
+    }
+
+    @Test
+    public void shouldImportFilmsAndReportErrorsPerItem() {
+        Film film = Film.builder()
+                .name("Импорт")
+                .description("Фильм из каталога")
+                .duration(100)
+                .releaseDate(LocalDate.of(2001, 5, 5))
+                .mpa(new Mpa(2, "PG"))
+                .build();
+        film.getGenres().add(new Genre(1, "Комедия"));
+        Film invalidFilm = Film.builder()
+                .name("")
+                .description("Без названия")
+                .duration(100)
+                .releaseDate(LocalDate.of(2001, 5, 5))
+                .mpa(new Mpa(2, "PG"))
+                .build();
+
+        List<FilmImportResult> results = filmService.importFilms(sink -> {
+            sink.accept(film, null);
+            sink.accept(null, "Некорректный JSON");
+            sink.accept(invalidFilm, null);
+        });
+
+        assertEquals(3, results.size());
+        assertNotNull(results.get(0).getId());
+        assertEquals("Некорректный JSON", results.get(1).getError());
+        assertNotNull(results.get(2).getError());
+        Film importedFilm = filmService.findFilmById(results.get(0).getId());
+        assertEquals("Импорт", importedFilm.getName());
+        assertEquals(1, importedFilm.getGenres().size());
+    }
+
+    @Test
+    public void shouldRetryFailedImportBatchFilmByFilm() {
+        Director director = directorService.addDirector(new Director(0, "Удалённый режиссёр"));
+        Film orphan = Film.builder()
+                .name("Сирота")
+                .description("Режиссёр удалён до записи пачки")
+                .duration(100)
+                .releaseDate(LocalDate.of(2001, 5, 5))
+                .mpa(new Mpa(2, "PG"))
+                .build();
+        orphan.getDirectors().add(director);
+        Film valid = Film.builder()
+                .name("Уцелевший")
+                .description("Корректный фильм из той же пачки")
+                .duration(100)
+                .releaseDate(LocalDate.of(2001, 5, 5))
+                .mpa(new Mpa(2, "PG"))
+                .build();
+        Film longName = Film.builder()
+                .name("Название длиннее тридцати символов")
+                .description("Не помещается в столбец NAME")
+                .duration(100)
+                .releaseDate(LocalDate.of(2001, 5, 5))
+                .mpa(new Mpa(2, "PG"))
+                .build();
+
+        List<FilmImportResult> results = filmService.importFilms(sink -> {
+            sink.accept(orphan, null);
+            directorService.deleteDirectorById(director.getId());
+            sink.accept(valid, null);
+            sink.accept(longName, null);
+        });
+
+        assertNull(results.get(0).getId());
+        assertTrue(results.get(0).getError().startsWith("Ошибка сохранения фильма"));
+        assertEquals("Уцелевший", filmService.findFilmById(results.get(1).getId()).getName());
+        assertEquals("name: Максимальная длина названия — 30 символов", results.get(2).getError());
+    }
+
+    @Test
+    public void shouldIngestLikesWithLastOperationWinning() {
+        Film film = Film.builder()
+                .name("Лайки пачкой")
+                .description("Фильм для загрузки лайков")
+                .duration(90)
+                .releaseDate(LocalDate.of(2010, 1, 1))
+                .mpa(new Mpa(1, "G"))
+                .build();
+        filmService.create(film);
+        User user = User.builder()
+                .email("ingest@mail.ru")
+                .login("ingest")
+                .name("Ingest")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+        userService.create(user);
+
+        LikeIngestResult result = filmService.ingestLikes(sink -> {
+            sink.accept(new LikeOperation(film.getId(), user.getId(), EventOperation.ADD), null);
+            sink.accept(new LikeOperation(film.getId(), user.getId(), EventOperation.REMOVE), null);
+            sink.accept(new LikeOperation(film.getId(), user.getId(), EventOperation.ADD), null);
+            sink.accept(new LikeOperation(film.getId(), user.getId(), EventOperation.UPDATE), null);
+        });
+
+        assertEquals(4, result.getReceived());
+        assertEquals(1, result.getRejected());
+        assertEquals(1, result.getApplied());
+        assertEquals(Set.of(user.getId()), filmService.findFilmById(film.getId()).getLikes());
     }
 
     @Test
@@ -285,7 +449,7 @@ public class FilmControllerTest {
         Director director = Director.builder().name("Гай Ричи").build();
         directorService.addDirector(director);
         User user = User.builder()
-                .login("Iris")
+                .login("Iris4")
                 .name("Melissa")
                 .email("mello@mail.ru")
                 .birthday(LocalDate.of(2000, 8, 15))
@@ -329,4 +493,180 @@ public class FilmControllerTest {
 
         assertFalse(filmService.getFilms().contains(film));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldLimitPageSizeAndDefaultItWhenOnlyAfterGiven() {
+        Film film = Film.builder()
+                .name("Последняя страница")
+                .description("Фильм для постраничной выдачи")
+                .duration(95)
+                .releaseDate(LocalDate.of(2015, 4, 4))
+                .mpa(new Mpa(1, "G"))
+                .build();
+        filmService.create(film);
+
+        assertThrows(ConstraintViolationException.class, () -> filmController.getFilms(Integer.MAX_VALUE, 0));
+        assertEquals(filmService.getFilms(0, FilmService.DEFAULT_PAGE_LIMIT), filmController.getFilmsAfter(0));
+        assertEquals(List.of(), filmController.getFilmsAfter(film.getId()));
+    }
+
+    @Test
+    public void shouldExportFilmsAsNdjson() throws IOException {
+        Film film = Film.builder()
+                .name("Выгрузка")
+                .description("Фильм для выгрузки")
+                .duration(95)
+                .releaseDate(LocalDate.of(2015, 4, 4))
+                .mpa(new Mpa(1, "G"))
+                .build();
+        film.getGenres().add(new Genre(2, "Драма"));
+        filmService.create(film);
+
+        ResponseEntity<StreamingResponseBody> response = filmController.exportFilms();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        response.getBody().writeTo(output);
+        String body = output.toString(StandardCharsets.UTF_8);
+
+        assertEquals(JsonStreamWriter.APPLICATION_NDJSON, response.getHeaders().getContentType());
+        assertTrue(body.endsWith("\n"));
+        List<Long> ids = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            JsonNode node = objectMapper.readTree(line);
+            assertTrue(node.isObject());
+            ids.add(node.get("id").asLong());
+            if (node.get("id").asLong() == film.getId()) {
+                assertEquals("Выгрузка", node.get("name").asText());
+                assertEquals(2, node.get("genres").get(0).get("id").asInt());
+            }
+        }
+        assertEquals(filmService.getFilms().size(), ids.size());
+        assertTrue(ids.contains(film.getId()));
+    }
+
+    @Test
+    public void shouldSuggestFilmsByWordPrefix() {
+        List<Long> ids = new ArrayList<>();
+        for (String name : List.of("Квазар", "Квадрат", "Синий квадрант")) {
+            Film film = Film.builder()
+                    .name(name)
+                    .description("Подсказки")
+                    .duration(90)
+                    .releaseDate(LocalDate.of(2012, 2, 2))
+                    .mpa(new Mpa(1, "G"))
+                    .build();
+            ids.add(filmService.create(film).getId());
+        }
+
+        List<Suggestion> suggestions = filmController.getSuggestions("КВА", 10);
+        List<Suggestion> limited = filmController.getSuggestions("ква", 2);
+
+        assertEquals(List.of(
+                new Suggestion(SuggestionType.FILM, ids.get(2), "Синий квадрант"),
+                new Suggestion(SuggestionType.FILM, ids.get(1), "Квадрат"),
+                new Suggestion(SuggestionType.FILM, ids.get(0), "Квазар")
+        ), suggestions);
+        assertEquals(suggestions.subList(0, 2), limited);
+        assertEquals(List.of(), filmController.getSuggestions("вадр", 10));
+    }
+
+    @Test
+    public void shouldInvalidateCachedFilmOnUpdateLikesAndDelete() {
+        Film film = Film.builder()
+                .name("Кэш")
+                .description("До обновления")
+                .duration(100)
+                .releaseDate(LocalDate.of(2018, 3, 3))
+                .mpa(new Mpa(1, "G"))
+                .build();
+        filmService.create(film);
+        User user = User.builder()
+                .email("cache@mail.ru")
+                .login("cache")
+                .name("Cache")
+                .birthday(LocalDate.of(1991, 1, 1))
+                .build();
+        userService.create(user);
+        filmService.findFilmById(film.getId()).getLikes().add(999L);
+
+        Film updated = Film.builder()
+                .id(film.getId())
+                .name("Кэш")
+                .description("После обновления")
+                .duration(100)
+                .releaseDate(LocalDate.of(2018, 3, 3))
+                .mpa(new Mpa(2, "PG"))
+                .build();
+        filmService.update(updated);
+        assertEquals("После обновления", filmService.findFilmById(film.getId()).getDescription());
+        assertEquals(2, filmService.findFilmById(film.getId()).getMpa().getId());
+        assertTrue(filmService.findFilmById(film.getId()).getLikes().isEmpty());
+
+        filmService.addLike(film.getId(), user.getId());
+        assertEquals(Set.of(user.getId()), filmService.findFilmById(film.getId()).getLikes());
+        filmService.deleteLike(film.getId(), user.getId());
+        assertTrue(filmService.findFilmById(film.getId()).getLikes().isEmpty());
+
+        filmService.deleteFilm(film.getId());
+        assertThrows(FilmDoesNotExistException.class, () -> filmService.findFilmById(film.getId()));
+    }
+
+    @Test
+    public void shouldReportAndInvalidateFilmCache() {
+        Film film = Film.builder()
+                .name("Статистика кэша")
+                .description("")
+                .duration(100)
+                .releaseDate(LocalDate.of(2019, 4, 4))
+                .mpa(new Mpa(1, "G"))
+                .build();
+        filmService.create(film);
+        filmService.findFilmById(film.getId());
+        CacheStats before = filmCacheStats();
+
+        filmService.findFilmById(film.getId());
+        CacheStats after = filmCacheStats();
+        assertEquals(before.getHitCount() + 1, after.getHitCount());
+        assertEquals(before.getMissCount(), after.getMissCount());
+        assertTrue(after.getSize() > 0);
+
+        cacheController.invalidate("films");
+        assertEquals(0, filmCacheStats().getSize());
+        assertThrows(ValidationException.class, () -> cacheController.invalidate("unknown"));
+    }
+
+    private CacheStats filmCacheStats() {
+        return cacheController.getCacheStats().stream()
+                .filter(stats -> stats.getName().equals("films"))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    @Test
+    public void shouldReportMissingFilmOrUserOnLikes() {
+        Film film = Film.builder()
+                .name("Проверка лайков")
+                .description("Фильм без лайков")
+                .duration(100)
+                .releaseDate(LocalDate.of(2011, 6, 6))
+                .mpa(new Mpa(1, "G"))
+                .build();
+        filmService.create(film);
+        User user = User.builder()
+                .email("probe_like@mail.ru")
+                .login("probe_like")
+                .name("Probe")
+                .birthday(LocalDate.of(1992, 2, 2))
+                .build();
+        userService.create(user);
+        long missingId = Integer.MAX_VALUE;
+
+        assertThrows(FilmDoesNotExistException.class, () -> filmService.addLike(missingId, user.getId()));
+        assertThrows(UserDoesNotExistException.class, () -> filmService.addLike(film.getId(), missingId));
+        assertThrows(FilmDoesNotExistException.class, () -> filmService.deleteLike(missingId, user.getId()));
+        assertThrows(UserDoesNotExistException.class, () -> filmService.deleteLike(film.getId(), missingId));
+        filmService.deleteLike(film.getId(), user.getId());
+
+        assertTrue(filmService.findFilmById(film.getId()).getLikes().isEmpty());
+        assertThrows(FilmDoesNotExistException.class, () -> filmService.deleteFilm(missingId));
+    }
+}
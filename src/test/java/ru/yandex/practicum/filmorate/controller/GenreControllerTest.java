@@ -5,7 +5,9 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import ru.yandex.practicum.filmorate.model.CacheStats;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.service.CacheService;
 import ru.yandex.practicum.filmorate.service.GenreService;
 
 import java.util.Collection;
@@ -18,6 +20,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 public class GenreControllerTest {
 
     private final GenreService genreService;
+    private final CacheService cacheService;
 
     @Test
     public void getAllGenres() {
@@ -32,4 +35,18 @@ public class GenreControllerTest {
 
         assertEquals("Комедия", genre.getName());
     }
+
+    @Test
+    public void shouldServeGenresFromCacheAfterInvalidation() {
+        cacheService.invalidate("genres");
+        genreService.getAllGenres();
+        Genre genre = genreService.getGenreById(2);
+        CacheStats stats = cacheService.getCacheStats().stream()
+                .filter(cacheStats -> cacheStats.getName().equals("genres"))
+                .findFirst()
+                .orElseThrow();
+
+        assertEquals("Драма", genre.getName());
+        assertEquals(6, stats.getSize());
+    }
 }
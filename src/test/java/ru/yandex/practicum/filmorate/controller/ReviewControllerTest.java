@@ -5,13 +5,22 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.exception.FilmDoesNotExistException;
+import ru.yandex.practicum.filmorate.exception.ReviewDoesNotExistException;
+import ru.yandex.practicum.filmorate.exception.UserDoesNotExistException;
+import ru.yandex.practicum.filmorate.model.EventOperation;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.ReviewVote;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.ReviewService;
+import ru.yandex.practicum.filmorate.service.ReviewVoteBuffer;
 import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.dao.ReviewDbStorage;
+import ru.yandex.practicum.filmorate.storage.dao.UserDbStorage;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.Validation;
@@ -31,6 +40,9 @@ public class ReviewControllerTest {
     private final ReviewService reviewService;
     private final FilmService filmService;
     private final UserService userService;
+    private final ReviewDbStorage reviewDbStorage;
+    private final UserDbStorage userDbStorage;
+    private final JdbcTemplate jdbcTemplate;
     private static Validator validator;
 
     static {
@@ -41,7 +53,7 @@ public class ReviewControllerTest {
     @Test
     public void shouldCreateReview() {
         User user = User.builder()
-                .login("Iris")
+                .login("Iris5")
                 .name("Melissa")
                 .email("catcat@mail.ru")
                 .birthday(LocalDate.of(2000, 8, 15))
@@ -448,4 +460,271 @@ public class ReviewControllerTest {
 
         assertEquals(0, reviewService.findReviewById(review.getReviewId()).getUseful());
     }
+
+    @Test
+    public void shouldRevertVotesOfDeletedUser() {
+        Film film = Film.builder()
+                .name("Век Адалин 12")
+                .description("Бессмертие от удара молнии")
+                .duration(192)
+                .releaseDate(LocalDate.of(2010, 12, 6))
+                .mpa(new Mpa(1, "PG"))
+                .build();
+        filmService.create(film);
+
+        User author = User.builder()
+                .login("VotedAuthor")
+                .name("Melissa")
+                .email("voted_author@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(author);
+        User voter = User.builder()
+                .login("DeletedVoter")
+                .name("Melissa")
+                .email("deleted_voter@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(voter);
+
+        Review liked = Review.builder()
+                .content("Неплохо")
+                .isPositive(true)
+                .userId(author.getId())
+                .filmId(film.getId())
+                .build();
+        reviewService.create(liked);
+        Review disliked = Review.builder()
+                .content("Не очень")
+                .isPositive(false)
+                .userId(author.getId())
+                .filmId(film.getId())
+                .build();
+        reviewService.create(disliked);
+        reviewService.addLike(liked.getReviewId(), voter.getId());
+        reviewService.addLike(liked.getReviewId(), author.getId());
+        reviewService.addDislike(disliked.getReviewId(), voter.getId());
+
+        userService.deleteUser(voter.getId());
+
+        assertEquals(1, reviewService.findReviewById(liked.getReviewId()).getUseful());
+        assertEquals(0, reviewService.findReviewById(disliked.getReviewId()).getUseful());
+    }
+
+    @Test
+    public void shouldReconcileDriftedUseful() {
+        Film film = Film.builder()
+                .name("Век Адалин 7")
+                .description("Бессмертие от удара молнии")
+                .duration(192)
+                .releaseDate(LocalDate.of(2010, 12, 6))
+                .mpa(new Mpa(1, "PG"))
+                .build();
+        filmService.create(film);
+
+        User user = User.builder()
+                .login("Drift")
+                .name("Melissa")
+                .email("drift@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(user);
+
+        Review review = Review.builder()
+                .content("Неплохо")
+                .isPositive(true)
+                .userId(user.getId())
+                .filmId(film.getId())
+                .build();
+        reviewService.create(review);
+        reviewService.addLike(review.getReviewId(), user.getId());
+        jdbcTemplate.update("UPDATE REVIEW SET USEFUL = 5 WHERE REVIEW_ID = ?", review.getReviewId());
+
+        reviewDbStorage.reconcileUseful();
+
+        assertEquals(1, reviewService.findReviewById(review.getReviewId()).getUseful());
+    }
+
+    @Test
+    public void shouldGetReviewsPageAfterReview() {
+        Film film = Film.builder()
+                .name("Век Адалин 8")
+                .description("Бессмертие от удара молнии")
+                .duration(192)
+                .releaseDate(LocalDate.of(2010, 12, 6))
+                .mpa(new Mpa(1, "PG"))
+                .build();
+        filmService.create(film);
+
+        User user = User.builder()
+                .login("Pager")
+                .name("Melissa")
+                .email("pager@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(user);
+
+        Review first = Review.builder()
+                .content("Неплохо")
+                .isPositive(true)
+                .userId(user.getId())
+                .filmId(film.getId())
+                .build();
+        reviewService.create(first);
+        Review second = Review.builder()
+                .content("Хорошо")
+                .isPositive(true)
+                .userId(user.getId())
+                .filmId(film.getId())
+                .build();
+        reviewService.create(second);
+        reviewService.addLike(second.getReviewId(), user.getId());
+
+        List<Review> firstPage = reviewService.getReviewsOfFilm(film.getId(), 1);
+        List<Review> secondPage = reviewService.getReviewsOfFilm(film.getId(), firstPage.get(0).getUseful(),
+                firstPage.get(0).getReviewId(), 10);
+
+        assertEquals(second.getReviewId(), firstPage.get(0).getReviewId());
+        assertEquals(1, secondPage.size());
+        assertEquals(first.getReviewId(), secondPage.get(0).getReviewId());
+    }
+
+    @Test
+    public void shouldCoalesceBufferedVotes() {
+        Film film = Film.builder()
+                .name("Век Адалин 9")
+                .description("Бессмертие от удара молнии")
+                .duration(192)
+                .releaseDate(LocalDate.of(2010, 12, 6))
+                .mpa(new Mpa(1, "PG"))
+                .build();
+        filmService.create(film);
+
+        User user = User.builder()
+                .login("Buffer")
+                .name("Melissa")
+                .email("buffer@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(user);
+
+        Review review = Review.builder()
+                .content("Неплохо")
+                .isPositive(true)
+                .userId(user.getId())
+                .filmId(film.getId())
+                .build();
+        reviewService.create(review);
+        ReviewVoteBuffer buffer = new ReviewVoteBuffer(reviewDbStorage, userDbStorage, "buffered");
+        buffer.add(new ReviewVote(review.getReviewId(), user.getId(), true, EventOperation.ADD));
+        buffer.add(new ReviewVote(review.getReviewId(), user.getId(), true, EventOperation.REMOVE));
+        buffer.add(new ReviewVote(review.getReviewId(), user.getId(), false, EventOperation.ADD));
+
+        assertEquals(0, reviewService.findReviewById(review.getReviewId()).getUseful());
+        buffer.flush();
+
+        assertEquals(-1, reviewService.findReviewById(review.getReviewId()).getUseful());
+    }
+
+    @Test
+    public void shouldRejectMissingAndDropDeletedBufferedVotes() {
+        Film film = Film.builder()
+                .name("Век Адалин 11")
+                .description("Бессмертие от удара молнии")
+                .duration(192)
+                .releaseDate(LocalDate.of(2010, 12, 6))
+                .mpa(new Mpa(1, "PG"))
+                .build();
+        filmService.create(film);
+
+        User user = User.builder()
+                .login("BufferMissing")
+                .name("Melissa")
+                .email("buffer_missing@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(user);
+
+        Review review = Review.builder()
+                .content("Неплохо")
+                .isPositive(true)
+                .userId(user.getId())
+                .filmId(film.getId())
+                .build();
+        reviewService.create(review);
+        long missingId = Integer.MAX_VALUE;
+        ReviewVoteBuffer buffer = new ReviewVoteBuffer(reviewDbStorage, userDbStorage, "buffered");
+        assertThrows(ReviewDoesNotExistException.class,
+                () -> buffer.add(new ReviewVote(missingId, user.getId(), true, EventOperation.ADD)));
+        assertThrows(UserDoesNotExistException.class,
+                () -> buffer.add(new ReviewVote(review.getReviewId(), missingId, true, EventOperation.ADD)));
+        Review deleted = Review.builder()
+                .content("Удалю")
+                .isPositive(true)
+                .userId(user.getId())
+                .filmId(film.getId())
+                .build();
+        reviewService.create(deleted);
+        buffer.add(new ReviewVote(deleted.getReviewId(), user.getId(), true, EventOperation.ADD));
+        buffer.add(new ReviewVote(review.getReviewId(), user.getId(), true, EventOperation.ADD));
+        reviewService.deleteReview(deleted.getReviewId());
+
+        buffer.flush();
+
+        assertEquals(1, reviewService.findReviewById(review.getReviewId()).getUseful());
+        assertThrows(ReviewDoesNotExistException.class, () -> reviewService.findReviewById(deleted.getReviewId()));
+    }
+
+    @Test
+    public void shouldReportMissingFilmUserOrReviewOnWrites() {
+        Film film = Film.builder()
+                .name("Век Адалин 10")
+                .description("Бессмертие от удара молнии")
+                .duration(192)
+                .releaseDate(LocalDate.of(2010, 12, 6))
+                .mpa(new Mpa(1, "PG"))
+                .build();
+        filmService.create(film);
+
+        User user = User.builder()
+                .login("Probe")
+                .name("Melissa")
+                .email("probe@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(user);
+
+        Review review = Review.builder()
+                .content("Неплохо")
+                .isPositive(true)
+                .userId(user.getId())
+                .filmId(film.getId())
+                .build();
+        reviewService.create(review);
+        long missingId = Integer.MAX_VALUE;
+
+        assertThrows(FilmDoesNotExistException.class, () -> reviewService.create(Review.builder()
+                .content("Нет фильма")
+                .isPositive(true)
+                .userId(user.getId())
+                .filmId(missingId)
+                .build()));
+        assertThrows(UserDoesNotExistException.class, () -> reviewService.create(Review.builder()
+                .content("Нет автора")
+                .isPositive(true)
+                .userId(missingId)
+                .filmId(film.getId())
+                .build()));
+        assertThrows(ReviewDoesNotExistException.class, () -> reviewService.addLike(missingId, user.getId()));
+        assertThrows(UserDoesNotExistException.class, () -> reviewService.addDislike(review.getReviewId(),
+                missingId));
+        assertThrows(ReviewDoesNotExistException.class, () -> reviewService.deleteDislike(missingId,
+                user.getId()));
+        assertThrows(UserDoesNotExistException.class, () -> reviewService.deleteLike(review.getReviewId(),
+                missingId));
+        reviewService.deleteLike(review.getReviewId(), user.getId());
+
+        assertEquals(0, reviewService.findReviewById(review.getReviewId()).getUseful());
+        assertEquals(1, reviewService.getReviewsOfFilm(film.getId(), 10).size());
+    }
 }
@@ -1,26 +1,40 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.exception.UserDoesNotExistException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.service.EventService;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.PurgeService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
 import javax.validation.Validation;
 import javax.validation.Validator;
 import javax.validation.ValidatorFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 @AutoConfigureTestDatabase
@@ -31,6 +45,9 @@ public class UserControllerTest {
     private final FilmService filmService;
 
     private final EventService eventService;
+    private final PurgeService purgeService;
+    private final UserController userController;
+    private final ObjectMapper objectMapper;
     private static Validator validator;
 
     static {
@@ -54,7 +71,7 @@ public class UserControllerTest {
     @Test
     public void shouldUpdateUser() {
         User user = User.builder()
-                .login("Mango11")
+                .login("Mango12")
                 .name("Melissa")
                 .email("nicemail@mail.ru")
                 .birthday(LocalDate.of(2000, 8, 15))
@@ -170,7 +187,7 @@ public class UserControllerTest {
                 .build();
         userService.create(user);
         User friend = User.builder()
-                .login("Iris")
+                .login("Iris6")
                 .name("Melissa")
                 .email("cat@mail.ru")
                 .birthday(LocalDate.of(2000, 8, 15))
@@ -193,7 +210,7 @@ public class UserControllerTest {
                 .build();
         userService.create(user);
         User friend = User.builder()
-                .login("Iris")
+                .login("Iris7")
                 .name("Melissa")
                 .email("cattycat@mail.ru")
                 .birthday(LocalDate.of(2000, 8, 15))
@@ -218,14 +235,14 @@ public class UserControllerTest {
     @Test
     public void shouldReturnAllFriends() {
         User user = User.builder()
-                .login("Windy")
+                .login("Windy2")
                 .name("Melissa")
                 .email("snowy@mail.ru")
                 .birthday(LocalDate.of(2000, 8, 15))
                 .build();
         userService.create(user);
         User friend = User.builder()
-                .login("Iris")
+                .login("Iris8")
                 .name("Melissa")
                 .email("stormy@mail.ru")
                 .birthday(LocalDate.of(2000, 8, 15))
@@ -252,6 +269,73 @@ public class UserControllerTest {
         assertFalse(userService.getUsers().contains(user));
     }
 
+    @Test
+    public void shouldGetUsersPageAfterId() {
+        User user = User.builder()
+                .login("Aster")
+                .name("Melissa")
+                .email("aster@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(user);
+        User user2 = User.builder()
+                .login("Dahlia")
+                .name("Melissa")
+                .email("dahlia@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(user2);
+
+        List<User> page = userService.getUsers(user.getId(), 1);
+
+        assertEquals(1, page.size());
+        assertEquals(user2.getId(), page.get(0).getId());
+    }
+
+    @Test
+    public void shouldLimitPageSizeAndDefaultItWhenOnlyAfterGiven() {
+        User user = User.builder()
+                .login("Freesia")
+                .name("Melissa")
+                .email("freesia@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(user);
+
+        assertThrows(ConstraintViolationException.class, () -> userController.getUsers(Integer.MAX_VALUE, 0));
+        assertEquals(userService.getUsers(0, UserService.DEFAULT_PAGE_LIMIT), userController.getUsersAfter(0));
+        assertEquals(List.of(), userController.getUsersAfter(user.getId()));
+    }
+
+    @Test
+    public void shouldExportUsersAsNdjson() throws IOException {
+        User user = User.builder()
+                .login("Export")
+                .name("Melissa")
+                .email("export@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(user);
+
+        ResponseEntity<StreamingResponseBody> response = userController.exportUsers();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        response.getBody().writeTo(output);
+        String body = output.toString(StandardCharsets.UTF_8);
+
+        assertEquals(JsonStreamWriter.APPLICATION_NDJSON, response.getHeaders().getContentType());
+        assertTrue(body.endsWith("\n"));
+        List<Long> ids = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            JsonNode node = objectMapper.readTree(line);
+            ids.add(node.get("id").asLong());
+            if (node.get("id").asLong() == user.getId()) {
+                assertEquals("Export", node.get("login").asText());
+            }
+        }
+        assertEquals(userService.getUsers().size(), ids.size());
+        assertTrue(ids.contains(user.getId()));
+    }
+
     @Test
     public void shouldCreateUserEvents() {
         User user = User.builder()
@@ -285,4 +369,208 @@ public class UserControllerTest {
         assertEquals(eventService.findUserEvent(user.getId()).get(0).getEventType(), EventType.LIKE);
         assertEquals(eventService.findUserEvent(user.getId()).get(1).getEventOperation(), EventOperation.ADD);
     }
+
+    @Test
+    public void shouldGetUserFeedPageAfterEvent() {
+        User user = User.builder()
+                .login("Lupin")
+                .name("Mel")
+                .email("lupin@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(user);
+        Event first = new Event(user.getId(), EventType.FRIEND, EventOperation.ADD, 1L);
+        Event second = new Event(user.getId(), EventType.FRIEND, EventOperation.REMOVE, 1L);
+        eventService.addEvent(first);
+        eventService.addEvent(second);
+        List<Event> feed = eventService.findUserEvent(user.getId());
+
+        List<Event> page = eventService.findUserEvents(user.getId(), feed.get(0).getTimeAdd(),
+                feed.get(0).getId(), 10);
+
+        assertEquals(1, page.size());
+        assertEquals(feed.get(1).getId(), page.get(0).getId());
+        assertEquals(EventOperation.REMOVE, page.get(0).getEventOperation());
+    }
+
+    @Test
+    public void shouldGetFriendsFeed() {
+        User user = User.builder()
+                .login("Borage")
+                .name("Mel")
+                .email("borage@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(user);
+        User friend = User.builder()
+                .login("Sorrel")
+                .name("Mark")
+                .email("sorrel@mail.ru")
+                .birthday(LocalDate.of(2002, 8, 15))
+                .build();
+        userService.create(friend);
+        userService.addFriend(user.getId(), friend.getId());
+        eventService.findFriendsEvents(user.getId(), 10);
+
+        eventService.addEvent(new Event(friend.getId(), EventType.FRIEND, EventOperation.ADD, user.getId()));
+        List<Event> feed = eventService.findFriendsEvents(user.getId(), 10);
+
+        assertEquals(1, feed.size());
+        assertEquals(friend.getId(), feed.get(0).getUserId());
+        assertEquals(List.of(), eventService.findFriendsEvents(friend.getId(), 10));
+    }
+
+    @Test
+    public void shouldNotCreateUserWithTakenEmail() {
+        User user = User.builder()
+                .login("Thyme")
+                .name("Mel")
+                .email("thyme@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(user);
+        User sameEmailUser = User.builder()
+                .login("Basil")
+                .name("Mel")
+                .email("thyme@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+
+        assertThrows(ValidationException.class, () -> userService.create(sameEmailUser));
+    }
+
+    @Test
+    public void shouldNotReturnDeletedFriend() {
+        User user = User.builder()
+                .login("Chervil")
+                .name("Mel")
+                .email("chervil@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(user);
+        User friend = User.builder()
+                .login("Tarragon")
+                .name("Mel")
+                .email("tarragon@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(friend);
+        userService.addFriend(user.getId(), friend.getId());
+
+        userService.deleteUser(friend.getId());
+
+        assertEquals(List.of(), userService.getAllFriends(user.getId()));
+    }
+
+    @Test
+    public void shouldSuggestFriendsOfFriends() {
+        User user = User.builder()
+                .login("Fennel")
+                .name("Mel")
+                .email("fennel@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(user);
+        User friend = User.builder()
+                .login("Anise")
+                .name("Mel")
+                .email("anise@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(friend);
+        User friendOfFriend = User.builder()
+                .login("Caraway")
+                .name("Mel")
+                .email("caraway@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(friendOfFriend);
+        userService.addFriend(user.getId(), friend.getId());
+        userService.addFriend(friend.getId(), friendOfFriend.getId());
+
+        assertEquals(List.of(friendOfFriend), userService.getFriendSuggestions(user.getId(), 10));
+        userService.addFriend(user.getId(), friendOfFriend.getId());
+        assertEquals(List.of(), userService.getFriendSuggestions(user.getId(), 10));
+    }
+
+    @Test
+    public void shouldFindUsersByIdsInRequestOrder() {
+        User user = User.builder()
+                .login("Sage")
+                .name("Mel")
+                .email("sage@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(user);
+        User secondUser = User.builder()
+                .login("Savory")
+                .name("Mel")
+                .email("savory@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(secondUser);
+
+        UserBatch batch = userService.findUsersByIds(List.of(secondUser.getId(), -1L, user.getId()));
+
+        assertEquals(List.of(secondUser, user), batch.getUsers());
+        assertEquals(List.of(-1L), batch.getMissingIds());
+    }
+
+    @Test
+    public void shouldPurgeUserInBackground() throws InterruptedException {
+        User user = User.builder()
+                .login("Purslane")
+                .name("Mel")
+                .email("purslane@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(user);
+        User friend = User.builder()
+                .login("Lovage")
+                .name("Mel")
+                .email("lovage@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(friend);
+        Film film = Film.builder()
+                .name("Зелёная миля")
+                .description("Чудо в камере смертников")
+                .duration(189)
+                .releaseDate(LocalDate.of(1999, 12, 6))
+                .mpa(new Mpa(1, "PG"))
+                .build();
+        filmService.create(film);
+        userService.addFriend(friend.getId(), user.getId());
+        filmService.addLike(film.getId(), user.getId());
+
+        PurgeJob job = purgeService.purgeUsers(List.of(user.getId(), -1L));
+        for (int i = 0; i < 100 && job.getStatus() != PurgeStatus.DONE; i++) {
+            Thread.sleep(50);
+        }
+
+        assertEquals(PurgeStatus.DONE, purgeService.getJob(job.getId()).getStatus());
+        assertEquals(List.of(-1L), job.getMissingIds());
+        assertThrows(UserDoesNotExistException.class, () -> userService.findUserById(user.getId()));
+        assertEquals(List.of(), userService.getAllFriends(friend.getId()));
+        assertEquals(0, filmService.findFilmById(film.getId()).getLikes().size());
+    }
+
+    @Test
+    public void shouldReportMissingUserOnFriendship() {
+        User user = User.builder()
+                .login("ProbeFriend")
+                .name("Melissa")
+                .email("probe_friend@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build();
+        userService.create(user);
+        long missingId = Integer.MAX_VALUE;
+
+        assertThrows(UserDoesNotExistException.class, () -> userService.addFriend(user.getId(), missingId));
+        assertThrows(UserDoesNotExistException.class, () -> userService.addFriend(missingId, user.getId()));
+        assertThrows(UserDoesNotExistException.class, () -> userService.getAllFriends(missingId));
+
+        assertEquals(Collections.emptyList(), userService.getAllFriends(user.getId()));
+        assertEquals(Collections.emptyList(), eventService.findUserEvent(user.getId()));
+    }
 }
@@ -0,0 +1,209 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.EventOperation;
+import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.storage.EventStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventWriterTest {
+
+    private static final long NEVER_MS = 60_000;
+
+    private final RecordingEventStorage storage = new RecordingEventStorage();
+    private EventWriter eventWriter;
+
+    @AfterEach
+    void stopWriter() throws InterruptedException {
+        storage.release.countDown();
+        if (eventWriter != null) {
+            eventWriter.stop();
+        }
+    }
+
+    @Test
+    void shouldWriteFullBatchesInOrder() {
+        startWriter(100, 3, NEVER_MS);
+        for (int i = 0; i < 7; i++) {
+            eventWriter.add(event(1, i));
+        }
+        eventWriter.flush();
+
+        assertEquals(List.of(3, 3, 1), storage.batchSizes());
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L, 6L), storage.writtenEntityIds());
+        assertTrue(storage.singles.isEmpty());
+    }
+
+    @Test
+    void shouldWritePendingEventsOnFlushBeforeBatchIsFull() {
+        startWriter(100, 100, NEVER_MS);
+        eventWriter.flush();
+        eventWriter.add(event(1, 1));
+        eventWriter.add(event(2, 2));
+        assertTrue(storage.writtenEntityIds().isEmpty());
+
+        eventWriter.flush();
+
+        assertEquals(List.of(1L, 2L), storage.writtenEntityIds());
+    }
+
+    @Test
+    void shouldWriteBatchAfterFlushInterval() throws InterruptedException {
+        startWriter(100, 100, 50);
+        eventWriter.add(event(1, 1));
+
+        assertTrue(storage.batchWritten.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(1L), storage.writtenEntityIds());
+    }
+
+    @Test
+    void shouldBlockAddWhileQueueIsFull() throws InterruptedException {
+        storage.blockBatches();
+        startWriter(2, 1, NEVER_MS);
+        eventWriter.add(event(1, 1));
+        assertTrue(storage.batchStarted.await(5, TimeUnit.SECONDS));
+        eventWriter.add(event(1, 2));
+        eventWriter.add(event(1, 3));
+
+        Thread producer = new Thread(() -> eventWriter.add(event(1, 4)));
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+        assertEquals(Thread.State.WAITING, producer.getState());
+
+        storage.release.countDown();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        eventWriter.flush();
+        assertEquals(List.of(1L, 2L, 3L, 4L), storage.writtenEntityIds());
+    }
+
+    @Test
+    void shouldFallBackToSingleWritesWhenBatchFails() {
+        storage.failBatches();
+        storage.failUsers(2L);
+        startWriter(100, 3, NEVER_MS);
+        eventWriter.add(event(1, 1));
+        eventWriter.add(event(2, 2));
+        eventWriter.add(event(3, 3));
+        eventWriter.flush();
+
+        assertTrue(storage.batches.isEmpty());
+        assertEquals(List.of(1L, 3L), storage.singles.stream().map(Event::getUserId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void shouldDrainQueueOnStopAndWriteDirectlyAfterwards() throws InterruptedException {
+        startWriter(100, 100, NEVER_MS);
+        for (int i = 0; i < 5; i++) {
+            eventWriter.add(event(1, i));
+        }
+
+        eventWriter.stop();
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L), storage.writtenEntityIds());
+
+        eventWriter.add(event(1, 5));
+        eventWriter.flush();
+        assertEquals(List.of(5L), storage.singles.stream().map(Event::getEntityId).collect(Collectors.toList()));
+    }
+
+    private void startWriter(int capacity, int batchSize, long flushIntervalMs) {
+        eventWriter = new EventWriter(storage, capacity, batchSize, flushIntervalMs);
+        eventWriter.start();
+    }
+
+    private static Event event(long userId, long entityId) {
+        return new Event(userId, EventType.LIKE, EventOperation.ADD, entityId);
+    }
+
+    /**
+     * Запоминает записанные пачки и одиночные события. Может блокировать запись пачек до {@code release}
+     * и отклонять пачки или события отдельных пользователей.
+     */
+    private static class RecordingEventStorage implements EventStorage {
+
+        private final List<List<Event>> batches = new ArrayList<>();
+        private final List<Event> singles = new ArrayList<>();
+        private final CountDownLatch batchStarted = new CountDownLatch(1);
+        private final CountDownLatch batchWritten = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile boolean blockBatches;
+        private volatile boolean failBatches;
+        private volatile Set<Long> failedUsers = Set.of();
+
+        void blockBatches() {
+            blockBatches = true;
+        }
+
+        void failBatches() {
+            failBatches = true;
+        }
+
+        void failUsers(Long... userIds) {
+            failedUsers = Set.of(userIds);
+        }
+
+        @Override
+        public void addEvent(Event event) {
+            if (failedUsers.contains(event.getUserId())) {
+                throw new DataIntegrityViolationException("Пользователь " + event.getUserId() + " удалён");
+            }
+            synchronized (this) {
+                singles.add(event);
+            }
+        }
+
+        @Override
+        public void addEvents(List<Event> events) {
+            batchStarted.countDown();
+            if (blockBatches) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failBatches) {
+                throw new DataIntegrityViolationException("Пачка отклонена");
+            }
+            synchronized (this) {
+                batches.add(new ArrayList<>(events));
+            }
+            batchWritten.countDown();
+        }
+
+        synchronized List<Integer> batchSizes() {
+            return batches.stream().map(List::size).collect(Collectors.toList());
+        }
+
+        synchronized List<Long> writtenEntityIds() {
+            return batches.stream().flatMap(List::stream).map(Event::getEntityId).collect(Collectors.toList());
+        }
+
+        @Override
+        public List<Event> findUserEvent(Long userId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Event> findUserEvents(long userId, long afterTimestamp, long afterEventId, int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Event> findFriendsEvents(long userId, int limit) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
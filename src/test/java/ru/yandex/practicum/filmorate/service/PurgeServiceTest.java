@@ -0,0 +1,90 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.yandex.practicum.filmorate.exception.PurgeJobDoesNotExistException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.PurgeJob;
+import ru.yandex.practicum.filmorate.model.PurgeStatus;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.dao.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.dao.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class PurgeServiceTest {
+
+    private final UserDbStorage userDbStorage;
+    private final FilmDbStorage filmDbStorage;
+    private final UserService userService;
+    private final FilmService filmService;
+
+    @Test
+    void shouldEvictFinishedJobsAfterTtl() throws InterruptedException {
+        PurgeService purgeService = new PurgeService(userDbStorage, filmDbStorage, userService, filmService,
+                1000, 0, 0);
+        PurgeJob job = purgeService.purgeUsers(List.of(createUser("PurgeEvicted")));
+        awaitFinished(job);
+        assertEquals(PurgeStatus.DONE, job.getStatus());
+        assertNotNull(job.getFinishedAt());
+
+        purgeService.evictFinishedJobs();
+
+        assertThrows(PurgeJobDoesNotExistException.class, () -> purgeService.getJob(job.getId()));
+    }
+
+    @Test
+    void shouldFailJobsThatNeverStartedOnStop() throws InterruptedException {
+        PurgeService purgeService = new PurgeService(userDbStorage, filmDbStorage, userService, filmService,
+                1, 60_000, 60_000);
+        long user = createUser("PurgeInterrupted");
+        Film film = filmService.create(Film.builder()
+                .name("Прерванный фильм")
+                .description("")
+                .duration(90)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(new Mpa(1, "G"))
+                .build());
+        filmService.addLike(film.getId(), user);
+        PurgeJob running = purgeService.purgeUsers(List.of(user));
+        PurgeJob queued = purgeService.purgeFilms(List.of(film.getId()));
+        for (int i = 0; i < 100 && running.getStatus() != PurgeStatus.RUNNING; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(PurgeStatus.RUNNING, running.getStatus());
+
+        purgeService.stop();
+        awaitFinished(running);
+
+        assertEquals(PurgeStatus.FAILED, queued.getStatus());
+        assertEquals(0, queued.getProcessed());
+        assertNotNull(queued.getFinishedAt());
+        assertEquals(PurgeStatus.FAILED, running.getStatus());
+        assertEquals(film.getId(), filmService.findFilmById(film.getId()).getId());
+    }
+
+    private long createUser(String login) {
+        return userService.create(User.builder()
+                .login(login)
+                .name(login)
+                .email(login.toLowerCase() + "@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build()).getId();
+    }
+
+    private static void awaitFinished(PurgeJob job) throws InterruptedException {
+        for (int i = 0; i < 100 && job.getFinishedAt() == null; i++) {
+            Thread.sleep(50);
+        }
+    }
+}
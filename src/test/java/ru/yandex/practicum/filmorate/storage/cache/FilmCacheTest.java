@@ -0,0 +1,118 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilmCacheTest {
+
+    private final FilmCache filmCache = new FilmCache(100, 300);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @AfterEach
+    void clearTransaction() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+
+    @Test
+    void shouldLoadOnceAndCountHits() {
+        filmCache.get(1, this::load);
+        filmCache.get(1, this::load);
+        filmCache.get(1, this::load);
+
+        assertEquals(1, loads.get());
+        assertEquals(1, filmCache.getStats().getSize());
+        assertEquals(2, filmCache.getStats().getHitCount());
+        assertEquals(1, filmCache.getStats().getMissCount());
+    }
+
+    @Test
+    void shouldReturnCopies() {
+        Film first = filmCache.get(1, this::load);
+        first.getLikes().add(42L);
+        first.setId(2L);
+
+        Film second = filmCache.get(1, this::load);
+
+        assertNotSame(first, second);
+        assertEquals(1L, second.getId());
+        assertTrue(second.getLikes().isEmpty());
+    }
+
+    @Test
+    void shouldReloadAfterInvalidation() {
+        filmCache.get(1, this::load);
+        filmCache.get(2, this::load);
+
+        filmCache.invalidate(1);
+        filmCache.get(1, this::load);
+        filmCache.get(2, this::load);
+        assertEquals(3, loads.get());
+
+        filmCache.invalidateAll();
+        assertEquals(0, filmCache.getStats().getSize());
+        filmCache.get(2, this::load);
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void shouldNotStoreFilmLoadedDuringInvalidation() {
+        filmCache.get(1, id -> {
+            filmCache.invalidate(id);
+            return load(id);
+        });
+
+        assertEquals(0, filmCache.getStats().getSize());
+    }
+
+    @Test
+    void shouldNotStoreFilmsInsideTransaction() {
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+
+        filmCache.get(1, this::load);
+        filmCache.get(1, this::load);
+
+        assertEquals(2, loads.get());
+        assertEquals(0, filmCache.getStats().getSize());
+    }
+
+    @Test
+    void shouldInvalidateAgainAfterRollback() {
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        filmCache.invalidate(1);
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        filmCache.get(1, this::load);
+        assertEquals(1, filmCache.getStats().getSize());
+
+        TransactionSynchronizationUtils.invokeAfterCompletion(TransactionSynchronizationManager.getSynchronizations(),
+                TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertEquals(0, filmCache.getStats().getSize());
+    }
+
+    private Film load(long id) {
+        loads.incrementAndGet();
+        return Film.builder()
+                .id(id)
+                .name("Фильм " + id)
+                .description("")
+                .duration(100)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(new Mpa(1, "G"))
+                .build();
+    }
+}
@@ -5,14 +5,25 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.EventOperation;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikeOperation;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 @AutoConfigureTestDatabase
@@ -21,6 +32,9 @@ class FilmDbStorageTest {
 
     private final FilmDbStorage filmDbStorage;
     private final UserDbStorage userDbStorage;
+    private final JdbcTemplate jdbcTemplate;
+    private final DirectorDbStorage directorDbStorage;
+    private final PlatformTransactionManager transactionManager;
 
     @Test
     void getRecommendations() {
@@ -28,7 +42,7 @@ class FilmDbStorageTest {
                 .id(1L)
                 .login("USER_ONE")
                 .name("Melissa")
-                .email("voiceemail@mail.ru")
+                .email("user_one@mail.ru")
                 .birthday(LocalDate.of(2000, 8, 15))
                 .build());
 
@@ -36,7 +50,7 @@ class FilmDbStorageTest {
                 .id(2L)
                 .login("USER_TWO")
                 .name("Melissa")
-                .email("voiceemail@mail.ru")
+                .email("user_two@mail.ru")
                 .birthday(LocalDate.of(2000, 8, 15))
                 .build());
 
@@ -52,4 +66,333 @@ class FilmDbStorageTest {
         List<Film> films = filmDbStorage.getRecommendations(2);
         assertEquals(1, films.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    void getSimilarFilmsOrderedByCommonLikes() {
+        long first = createUser("SIMILAR_ONE");
+        long second = createUser("SIMILAR_TWO");
+        long third = createUser("SIMILAR_THREE");
+        long film = createFilm("SIMILAR_FILM");
+        long closest = createFilm("SIMILAR_CLOSEST");
+        long other = createFilm("SIMILAR_OTHER");
+        long unrelated = createFilm("SIMILAR_UNRELATED");
+
+        filmDbStorage.addLike(film, first);
+        filmDbStorage.addLike(film, second);
+        filmDbStorage.addLike(closest, first);
+        filmDbStorage.addLike(closest, second);
+        filmDbStorage.addLike(other, second);
+        filmDbStorage.addLike(unrelated, third);
+
+        List<Film> similar = filmDbStorage.getSimilarFilms(film, 10);
+        assertEquals(List.of(closest, other), similar.stream().map(Film::getId).collect(Collectors.toList()));
+        assertEquals(1, filmDbStorage.getSimilarFilms(film, 1).size());
+    }
+
+    @Test
+    void getRecommendationsMatchesSelfJoinAfterLikeChanges() {
+        long user = createUser("MODEL_USER");
+        long closest = createUser("MODEL_CLOSEST");
+        long close = createUser("MODEL_CLOSE");
+        long far = createUser("MODEL_FAR");
+        long[] films = new long[6];
+        for (int i = 0; i < films.length; i++) {
+            films[i] = createFilm("MODEL_FILM_" + i);
+        }
+        likeAll(user, films[0], films[1], films[2]);
+        likeAll(closest, films[0], films[1], films[2], films[3]);
+        likeAll(close, films[0], films[1], films[4]);
+        likeAll(far, films[2], films[5]);
+        assertSameAsSelfJoin(user);
+        assertEquals(List.of(films[3], films[4], films[5]), recommendedIds(user));
+
+        filmDbStorage.deleteLike(films[2], user);
+        assertSameAsSelfJoin(user);
+        assertEquals(List.of(films[2], films[3], films[4]), recommendedIds(user));
+
+        userDbStorage.deleteUser(closest);
+        assertSameAsSelfJoin(user);
+        assertEquals(List.of(films[4]), recommendedIds(user));
+
+        filmDbStorage.deleteFilm(films[4]);
+        assertSameAsSelfJoin(user);
+        assertEquals(List.of(), recommendedIds(user));
+    }
+
+    @Test
+    void batchHydrationMatchesPerFilmQueries() {
+        long firstUser = createUser("HYDRATE_ONE");
+        long secondUser = createUser("HYDRATE_TWO");
+        Director firstDirector = directorDbStorage.addDirector(new Director(0, "HYDRATE_DIRECTOR_ONE"));
+        Director secondDirector = directorDbStorage.addDirector(new Director(0, "HYDRATE_DIRECTOR_TWO"));
+        Film withEverything = Film.builder().name("HYDRATE_FULL").description("").duration(100)
+                .releaseDate(LocalDate.of(2001, 1, 1)).mpa(new Mpa(2, null)).build();
+        withEverything.getGenres().add(new Genre(1, null));
+        withEverything.getGenres().add(new Genre(2, null));
+        withEverything.getDirectors().add(firstDirector);
+        Film withNothing = Film.builder().name("HYDRATE_EMPTY").description("").duration(100)
+                .releaseDate(LocalDate.of(2002, 1, 1)).mpa(new Mpa(1, null)).build();
+        Film withTwoDirectors = Film.builder().name("HYDRATE_DIRECTORS").description("").duration(100)
+                .releaseDate(LocalDate.of(2003, 1, 1)).mpa(new Mpa(3, null)).build();
+        withTwoDirectors.getGenres().add(new Genre(3, null));
+        withTwoDirectors.getDirectors().add(firstDirector);
+        withTwoDirectors.getDirectors().add(secondDirector);
+        long first = filmDbStorage.create(withEverything).getId();
+        filmDbStorage.create(withNothing);
+        long last = filmDbStorage.create(withTwoDirectors).getId();
+        likeAll(firstUser, first, last);
+        likeAll(secondUser, first);
+
+        List<Film> page = filmDbStorage.getFilms(first - 1, (int) (last - first + 1));
+        List<Film> exported = new ArrayList<>();
+        filmDbStorage.exportFilms(film -> {
+            if (film.getId() >= first && film.getId() <= last) {
+                exported.add(film);
+            }
+        });
+
+        assertEquals(3, page.size());
+        for (int i = 0; i < page.size(); i++) {
+            Film expected = loadFilmOneByOne(page.get(i).getId());
+            assertEquals(expected, page.get(i));
+            assertEquals(expected, exported.get(i));
+            assertEquals(expected, filmDbStorage.findFilmById(expected.getId()));
+        }
+        assertEquals(2, page.get(0).getGenres().size());
+        assertTrue(page.get(1).getLikes().isEmpty());
+        assertEquals(2, page.get(2).getDirectors().size());
+    }
+
+    /**
+     * Загружает фильм отдельными запросами на каждую связь, как это делалось до пакетной загрузки.
+     */
+    private Film loadFilmOneByOne(long filmId) {
+        Film film = jdbcTemplate.queryForObject("SELECT * FROM FILM F JOIN RATING R ON F.RATING_ID = R.RATING_ID " +
+                "WHERE F.FILM_ID = ?", (rs, rowNum) -> Film.builder()
+                .id(rs.getLong("FILM_ID"))
+                .name(rs.getString("NAME"))
+                .description(rs.getString("DESCRIPTION"))
+                .releaseDate(rs.getDate("RELEASE_DATE").toLocalDate())
+                .duration(rs.getInt("DURATION"))
+                .mpa(new Mpa(rs.getInt("RATING_ID"), rs.getString("RATING_NAME")))
+                .build(), filmId);
+        jdbcTemplate.query("SELECT G.GENRE_ID, G.GENRE_NAME FROM FILM_GENRE FG " +
+                "JOIN GENRE G ON FG.GENRE_ID = G.GENRE_ID WHERE FG.FILM_ID = ?", rs -> {
+            film.getGenres().add(new Genre(rs.getInt("GENRE_ID"), rs.getString("GENRE_NAME")));
+        }, filmId);
+        jdbcTemplate.query("SELECT D.DIRECTOR_ID, D.DIRECTOR_NAME FROM FILM_DIRECTOR FD " +
+                "JOIN DIRECTOR D ON FD.DIRECTOR_ID = D.DIRECTOR_ID WHERE FD.FILM_ID = ?", rs -> {
+            film.getDirectors().add(new Director(rs.getInt("DIRECTOR_ID"), rs.getString("DIRECTOR_NAME")));
+        }, filmId);
+        film.getLikes().addAll(jdbcTemplate.queryForList("SELECT USER_ID FROM FILM_LIKE WHERE FILM_ID = ?",
+                Long.class, filmId));
+        return film;
+    }
+
+    @Test
+    void searchOrdersWordStartsBeforeSubstrings() {
+        long inside = createFilm("Заорбитальный");
+        long wordStart = createFilm("Орбитальный рейс");
+        long secondWord = createFilm("Станция орбита");
+
+        List<Long> found = filmDbStorage.getFilmsByDirectorOrTitle("ОРБИ", "", "title").stream()
+                .map(Film::getId)
+                .collect(Collectors.toList());
+
+        assertEquals(List.of(wordStart, secondWord, inside), found);
+    }
+
+    @Test
+    void rolledBackFilmIsNotSearchable() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            createFilm("Призрак отката");
+            status.setRollbackOnly();
+        });
+        long committed = createFilm("Призрак коммита");
+
+        List<Long> found = filmDbStorage.getFilmsByDirectorOrTitle("призрак", "", "title").stream()
+                .map(Film::getId)
+                .collect(Collectors.toList());
+
+        assertEquals(List.of(committed), found);
+    }
+
+    @Test
+    void rolledBackLikeChangesDoNotReachLikeGraph() {
+        long user = createUser("ROLLBACK_LIKER");
+        long other = createUser("ROLLBACK_OTHER");
+        long liked = createFilm("ROLLBACK_LIKED");
+        long phantom = createFilm("ROLLBACK_PHANTOM");
+        likeAll(user, liked);
+        likeAll(other, liked);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        transaction.executeWithoutResult(status -> {
+            filmDbStorage.addLike(phantom, other);
+            filmDbStorage.deleteLike(liked, user);
+            filmDbStorage.applyLikes(List.of(new LikeOperation(phantom, user, EventOperation.ADD)));
+            status.setRollbackOnly();
+        });
+
+        assertEquals(Set.of(user, other), filmDbStorage.findFilmById(liked).getLikes());
+        assertTrue(filmDbStorage.findFilmById(phantom).getLikes().isEmpty());
+        assertEquals(List.of(), recommendedIds(user));
+        assertEquals(List.of(), filmDbStorage.getSimilarFilms(liked, 10));
+    }
+
+    @Test
+    void applyLikesTrustsDatabaseOverStaleLikeGraph() {
+        long user = createUser("STALE_LIKER");
+        long film = createFilm("STALE_FILM");
+        long other = createFilm("STALE_OTHER");
+        jdbcTemplate.update("INSERT INTO FILM_LIKE (FILM_ID, USER_ID) VALUES (?, ?)", film, user);
+
+        List<LikeOperation> applied = filmDbStorage.applyLikes(List.of(
+                new LikeOperation(film, user, EventOperation.ADD),
+                new LikeOperation(other, user, EventOperation.REMOVE)));
+        assertEquals(List.of(), applied);
+
+        applied = filmDbStorage.applyLikes(List.of(new LikeOperation(film, user, EventOperation.REMOVE),
+                new LikeOperation(other, user, EventOperation.ADD)));
+        assertEquals(2, applied.size());
+        assertEquals(0, likesCount(film));
+        assertEquals(1, likesCount(other));
+        assertEquals(Set.of(user), filmDbStorage.findFilmById(other).getLikes());
+    }
+
+    @Test
+    void deleteByRowIdsSkipsRowsDeletedConcurrently() {
+        long first = createUser("ROWID_ONE");
+        long second = createUser("ROWID_TWO");
+        long film = createFilm("ROWID_FILM");
+        likeAll(first, film);
+        likeAll(second, film);
+        List<Long> rowIds = new ArrayList<>();
+        List<Long> userIds = new ArrayList<>();
+        jdbcTemplate.query("SELECT _ROWID_ AS ROW_ID, USER_ID FROM FILM_LIKE WHERE FILM_ID = ? ORDER BY USER_ID",
+                rs -> {
+                    rowIds.add(rs.getLong("ROW_ID"));
+                    userIds.add(rs.getLong("USER_ID"));
+                }, film);
+        filmDbStorage.deleteLike(film, first);
+
+        assertEquals(List.of(second), SqlUtils.deleteByRowIds(jdbcTemplate, "FILM_LIKE", rowIds, userIds));
+        assertEquals(List.of(), SqlUtils.deleteByRowIds(jdbcTemplate, "FILM_LIKE", rowIds, userIds));
+    }
+
+    private int likesCount(long filmId) {
+        return jdbcTemplate.queryForObject("SELECT LIKES_COUNT FROM FILM WHERE FILM_ID = ?", Integer.class, filmId);
+    }
+
+    @Test
+    void rolledBackImportBatchIsNotSearchable() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            filmDbStorage.createFilms(List.of(importFilm("Мираж отката один"), importFilm("Мираж отката два")));
+            status.setRollbackOnly();
+        });
+        List<Long> ids = filmDbStorage.createFilms(List.of(importFilm("Мираж коммита один"),
+                importFilm("Мираж коммита два")));
+
+        List<Long> found = filmDbStorage.getFilmsByDirectorOrTitle("мираж", "", "title").stream()
+                .map(Film::getId)
+                .sorted()
+                .collect(Collectors.toList());
+
+        assertEquals(2, ids.size());
+        assertEquals(ids, found);
+    }
+
+    private Film importFilm(String name) {
+        return Film.builder().name(name).description("").duration(90)
+                .releaseDate(LocalDate.of(2010, 1, 1)).mpa(new Mpa(1, null)).build();
+    }
+
+    @Test
+    void updateAddsRemovesAndKeepsReorderedGenresAndDirectors() {
+        Director first = directorDbStorage.addDirector(new Director(0, "DIFF_DIRECTOR_ONE"));
+        Director second = directorDbStorage.addDirector(new Director(0, "DIFF_DIRECTOR_TWO"));
+        Film film = Film.builder().name("DIFF_FILM").description("").duration(100)
+                .releaseDate(LocalDate.of(2005, 5, 5)).mpa(new Mpa(1, null)).build();
+        film.getGenres().add(new Genre(1, null));
+        film.getGenres().add(new Genre(2, null));
+        film.getDirectors().add(first);
+        long id = filmDbStorage.create(film).getId();
+
+        filmDbStorage.update(withAssociations(id, List.of(2, 3), List.of(first, second)));
+        assertAssociations(id, Set.of(2, 3), Set.of(first.getId(), second.getId()));
+
+        filmDbStorage.update(withAssociations(id, List.of(3, 2), List.of(second, first)));
+        assertAssociations(id, Set.of(2, 3), Set.of(first.getId(), second.getId()));
+
+        filmDbStorage.update(withAssociations(id, List.of(4), List.of(second)));
+        assertAssociations(id, Set.of(4), Set.of(second.getId()));
+
+        filmDbStorage.update(withAssociations(id, List.of(), List.of()));
+        assertAssociations(id, Set.of(), Set.of());
+    }
+
+    private Film withAssociations(long id, List<Integer> genreIds, List<Director> directors) {
+        Film film = Film.builder().id(id).name("DIFF_FILM").description("").duration(100)
+                .releaseDate(LocalDate.of(2005, 5, 5)).mpa(new Mpa(1, null)).build();
+        genreIds.forEach(genreId -> film.getGenres().add(new Genre(genreId, null)));
+        film.getDirectors().addAll(directors);
+        return film;
+    }
+
+    /**
+     * Проверяет связи и через кеш фильмов, и напрямую по таблицам, чтобы заметить дубликаты строк.
+     */
+    private void assertAssociations(long filmId, Set<Integer> genreIds, Set<Integer> directorIds) {
+        Film film = filmDbStorage.findFilmById(filmId);
+        assertEquals(genreIds, film.getGenres().stream().map(Genre::getId).collect(Collectors.toSet()));
+        assertEquals(directorIds, film.getDirectors().stream().map(Director::getId).collect(Collectors.toSet()));
+        assertEquals(genreIds.size(), jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM FILM_GENRE WHERE FILM_ID = ?", Integer.class, filmId));
+        assertEquals(directorIds.size(), jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM FILM_DIRECTOR WHERE FILM_ID = ?", Integer.class, filmId));
+    }
+
+    private void likeAll(long userId, long... filmIds) {
+        for (long filmId : filmIds) {
+            filmDbStorage.addLike(filmId, userId);
+        }
+    }
+
+    private List<Long> recommendedIds(long userId) {
+        return filmDbStorage.getRecommendations(userId).stream().map(Film::getId).collect(Collectors.toList());
+    }
+
+    /**
+     * Сравнивает рекомендации модели с прежним запросом: фильмы трёх пользователей с наибольшим числом
+     * общих лайков, которые данный пользователь не лайкал.
+     */
+    private void assertSameAsSelfJoin(long userId) {
+        String sql = "SELECT FILM_ID FROM FILM_LIKE " +
+                "WHERE USER_ID IN (" +
+                "SELECT FL1.USER_ID FROM FILM_LIKE FL1 " +
+                "RIGHT JOIN FILM_LIKE FL2 ON FL2.FILM_ID = FL1.FILM_ID " +
+                "GROUP BY FL1.USER_ID, FL2.USER_ID " +
+                "HAVING FL1.USER_ID IS NOT NULL AND FL1.USER_ID != ? AND FL2.USER_ID = ? " +
+                "ORDER BY COUNT(FL1.USER_ID) DESC " +
+                "LIMIT 3) " +
+                "AND FILM_ID NOT IN (SELECT FILM_ID FROM FILM_LIKE WHERE USER_ID = ?) " +
+                "GROUP BY FILM_ID ORDER BY FILM_ID";
+        assertEquals(jdbcTemplate.queryForList(sql, Long.class, userId, userId, userId), recommendedIds(userId));
+    }
+
+    private long createUser(String login) {
+        return userDbStorage.create(User.builder()
+                .login(login)
+                .name(login)
+                .email(login.toLowerCase() + "@mail.ru")
+                .birthday(LocalDate.of(2000, 8, 15))
+                .build()).getId();
+    }
+
+    private long createFilm(String name) {
+        return filmDbStorage.create(Film.builder().name(name).description("").duration(140)
+                .releaseDate(LocalDate.now()).mpa(new Mpa(1, "")).build()).getId();
+    }
+}
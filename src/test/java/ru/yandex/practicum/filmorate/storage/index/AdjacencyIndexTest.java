@@ -0,0 +1,76 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdjacencyIndexTest {
+
+    @Test
+    void shouldKeepRowsSortedWithoutDuplicates() {
+        AdjacencyIndex index = new AdjacencyIndex();
+
+        assertTrue(index.add(1, 30));
+        assertTrue(index.add(1, 10));
+        assertTrue(index.add(1, 20));
+        assertFalse(index.add(1, 10));
+
+        assertArrayEquals(new int[]{10, 20, 30}, index.get(1));
+        assertEquals(3, index.degree(1));
+        assertTrue(index.contains(1, 20));
+        assertFalse(index.contains(2, 20));
+    }
+
+    @Test
+    void shouldRemoveValuesAndRows() {
+        AdjacencyIndex index = new AdjacencyIndex();
+        index.add(1, 10);
+        index.add(1, 20);
+        index.add(2, 10);
+
+        assertTrue(index.remove(1, 10));
+        assertFalse(index.remove(1, 10));
+        assertArrayEquals(new int[]{20}, index.get(1));
+        assertTrue(index.remove(1, 20));
+        assertEquals(0, index.degree(1));
+        assertArrayEquals(new int[]{10}, index.removeAll(2));
+        assertArrayEquals(new int[0], index.ids());
+    }
+
+    @Test
+    void shouldGrowForLargeIds() {
+        AdjacencyIndex index = new AdjacencyIndex();
+        index.add(5000, 1);
+        index.add(3, 1);
+
+        assertArrayEquals(new int[]{1}, index.get(5000));
+        assertArrayEquals(new int[0], index.get(100_000));
+        assertArrayEquals(new int[0], index.get(-1));
+        assertArrayEquals(new int[]{3, 5000}, index.ids());
+    }
+
+    @Test
+    void shouldBuildFromUnsortedPairs() {
+        long[] pairs = {
+                AdjacencyIndex.pair(2, 7),
+                AdjacencyIndex.pair(1, 9),
+                AdjacencyIndex.pair(1, 3),
+                AdjacencyIndex.pair(2, 7)
+        };
+
+        AdjacencyIndex index = AdjacencyIndex.fromPairs(pairs, pairs.length);
+
+        assertArrayEquals(new int[]{3, 9}, index.get(1));
+        assertArrayEquals(new int[]{7}, index.get(2));
+    }
+
+    @Test
+    void shouldIntersectSortedRows() {
+        int[] first = {1, 3, 5, 7};
+        int[] second = {2, 3, 4, 7, 9};
+
+        assertEquals(2, AdjacencyIndex.intersectionSize(first, second));
+        assertArrayEquals(new int[]{3, 7}, AdjacencyIndex.intersection(first, second));
+        assertArrayEquals(new int[0], AdjacencyIndex.intersection(first, new int[0]));
+    }
+}
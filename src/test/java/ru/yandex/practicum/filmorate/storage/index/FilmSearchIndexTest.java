@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FilmSearchIndexTest {
+
+    private final FilmSearchIndex index = new FilmSearchIndex();
+
+    @Test
+    void shouldFindShortQueriesByGramLookup() {
+        index.indexFilm(1, "Матрица", List.of());
+        index.indexFilm(2, "Терминатор", List.of());
+        index.indexFilm(3, "Хоббит", List.of());
+
+        assertEquals(Set.of(1L, 2L), index.search("а", true, false).keySet());
+        assertEquals(Set.of(1L), index.search("МА", true, false).keySet());
+        assertEquals(Set.of(2L), index.search("рм", true, false).keySet());
+        assertEquals(Set.of(3L), index.search("обб", true, false).keySet());
+        assertEquals(Set.of(), index.search("я", true, false).keySet());
+    }
+
+    @Test
+    void shouldVerifyLongQueriesAgainstWholeTitle() {
+        index.indexFilm(1, "abcd bcde", List.of());
+        index.indexFilm(2, "xabcdex", List.of());
+
+        assertEquals(Set.of(2L), index.search("abcde", true, false).keySet());
+        assertEquals(Set.of(1L, 2L), index.search("abcd", true, false).keySet());
+        assertEquals(Set.of(), index.search("abcdef", true, false).keySet());
+    }
+
+    @Test
+    void shouldRankWordStartsAboveSubstrings() {
+        index.indexFilm(1, "Начало", List.of());
+        index.indexFilm(2, "Безначалие", List.of());
+        index.indexFilm(3, "Конец начала", List.of());
+
+        Map<Long, Integer> relevance = index.search("нача", true, false);
+
+        assertEquals(FilmSearchIndex.WORD_MATCH, relevance.get(1L));
+        assertEquals(FilmSearchIndex.SUBSTRING_MATCH, relevance.get(2L));
+        assertEquals(FilmSearchIndex.WORD_MATCH, relevance.get(3L));
+        assertEquals(FilmSearchIndex.WORD_MATCH, index.search("на", true, false).get(1L));
+        assertEquals(FilmSearchIndex.SUBSTRING_MATCH, index.search("на", true, false).get(2L));
+    }
+
+    @Test
+    void shouldSearchFilmsByDirectorName() {
+        index.indexDirector(10, "Гай Ричи");
+        index.indexDirector(20, "Кристофер Нолан");
+        index.indexFilm(1, "Джентльмены", List.of(10));
+        index.indexFilm(2, "Начало", List.of(20));
+        index.indexFilm(3, "Гамлет", List.of());
+
+        assertEquals(Set.of(1L), index.search("ричи", false, true).keySet());
+        assertEquals(Set.of(3L), index.search("га", true, false).keySet());
+        assertEquals(Set.of(1L, 3L), index.search("га", true, true).keySet());
+        assertEquals(FilmSearchIndex.SUBSTRING_MATCH, index.search("ола", false, true).get(2L));
+    }
+
+    @Test
+    void shouldForgetOldTitlesAndRemovedFilms() {
+        index.indexDirector(10, "Гай Ричи");
+        index.indexFilm(1, "Черновик", List.of(10));
+
+        index.indexFilm(1, "Беловик", List.of());
+        assertEquals(Set.of(), index.search("черн", true, false).keySet());
+        assertEquals(Set.of(1L), index.search("бело", true, false).keySet());
+        assertEquals(Set.of(), index.search("ричи", false, true).keySet());
+
+        index.removeFilm(1);
+        assertEquals(Set.of(), index.search("бело", true, false).keySet());
+        assertEquals(Set.of(), index.search("б", true, false).keySet());
+    }
+}
@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LikeGraphTest {
+
+    @Test
+    void shouldAddAndRemoveLikesInBothDirections() {
+        LikeGraph likeGraph = new LikeGraph();
+
+        assertTrue(likeGraph.addLike(1, 10));
+        assertTrue(likeGraph.addLike(2, 10));
+        assertTrue(likeGraph.addLike(1, 20));
+        assertFalse(likeGraph.addLike(1, 10));
+
+        assertArrayEquals(new int[]{10, 20}, likeGraph.getLikers(1));
+        assertArrayEquals(new int[]{1, 2}, likeGraph.getLikedFilms(10));
+        assertEquals(2, likeGraph.getLikesCount(1));
+        assertTrue(likeGraph.isLiked(2, 10));
+
+        assertTrue(likeGraph.removeLike(1, 10));
+        assertFalse(likeGraph.removeLike(1, 10));
+        assertArrayEquals(new int[]{20}, likeGraph.getLikers(1));
+        assertArrayEquals(new int[]{2}, likeGraph.getLikedFilms(10));
+    }
+
+    @Test
+    void shouldRemoveUserFromAllFilms() {
+        LikeGraph likeGraph = new LikeGraph();
+        likeGraph.addLike(1, 10);
+        likeGraph.addLike(2, 10);
+        likeGraph.addLike(2, 20);
+
+        assertArrayEquals(new int[]{1, 2}, likeGraph.removeUser(10));
+
+        assertArrayEquals(new int[0], likeGraph.getLikers(1));
+        assertArrayEquals(new int[]{20}, likeGraph.getLikers(2));
+        assertArrayEquals(new int[]{20}, likeGraph.getUsers());
+        assertArrayEquals(new int[]{2}, likeGraph.getFilms());
+    }
+
+    @Test
+    void shouldRemoveFilmFromAllUsers() {
+        LikeGraph likeGraph = new LikeGraph();
+        likeGraph.addLike(1, 10);
+        likeGraph.addLike(1, 20);
+        likeGraph.addLike(2, 20);
+
+        assertArrayEquals(new int[]{10, 20}, likeGraph.removeFilm(1));
+
+        assertArrayEquals(new int[0], likeGraph.getLikedFilms(10));
+        assertArrayEquals(new int[]{2}, likeGraph.getLikedFilms(20));
+    }
+
+    @Test
+    void shouldReplayChangesMadeDuringReload() {
+        LikeGraph likeGraph = new LikeGraph();
+        likeGraph.addLike(9, 90);
+
+        likeGraph.reload(sink -> {
+            sink.accept(1, 10);
+            sink.accept(1, 20);
+            likeGraph.addLike(2, 30);
+            likeGraph.removeLike(1, 20);
+        });
+
+        assertArrayEquals(new int[]{10}, likeGraph.getLikers(1));
+        assertArrayEquals(new int[]{30}, likeGraph.getLikers(2));
+        assertArrayEquals(new int[0], likeGraph.getLikers(9));
+    }
+}
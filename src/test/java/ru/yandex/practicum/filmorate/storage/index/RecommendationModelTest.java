@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecommendationModelTest {
+
+    private final LikeGraph likeGraph = new LikeGraph();
+    private final RecommendationModel model = new RecommendationModel(likeGraph);
+
+    @Test
+    void shouldRecommendFilmsOfClosestUsers() {
+        like(1, 1, 2, 3);
+        like(2, 1, 2, 3, 4);
+        like(3, 1, 2, 5);
+        like(4, 3, 6);
+        like(5, 7, 8);
+        like(6, 1, 9);
+        model.rebuild();
+
+        assertEquals(Set.of(4L, 5L, 6L), model.recommend(1));
+        assertEquals(Set.of(), model.recommend(100));
+    }
+
+    @Test
+    void shouldUpdateNeighboursAfterLikeChangesBetweenRebuilds() {
+        like(1, 1, 2);
+        like(2, 1, 3);
+        model.rebuild();
+        assertEquals(Set.of(3L), model.recommend(1));
+
+        like(3, 1, 2, 4);
+        assertEquals(Set.of(3L, 4L), model.recommend(1));
+
+        likeGraph.removeLike(1, 2);
+        model.likeChanged(1, 2);
+        assertEquals(Set.of(4L), model.recommend(1));
+    }
+
+    @Test
+    void shouldForgetRemovedUsersAndFilms() {
+        like(1, 1);
+        like(2, 1, 2);
+        like(3, 1, 3);
+        model.rebuild();
+        assertEquals(Set.of(2L, 3L), model.recommend(1));
+
+        model.userRemoved(2, likeGraph.removeUser(2));
+        assertEquals(Set.of(3L), model.recommend(1));
+
+        model.filmRemoved(3, likeGraph.removeFilm(3));
+        assertEquals(Set.of(), model.recommend(1));
+    }
+
+    @Test
+    void shouldFindSimilarFilmsByCommonLikers() {
+        like(1, 1, 2, 3);
+        like(2, 1, 2);
+        like(3, 1, 4);
+        like(4, 5);
+        model.rebuild();
+
+        assertEquals(List.of(2L, 3L, 4L), model.findSimilar(1, 10));
+        assertEquals(List.of(2L), model.findSimilar(1, 1));
+        assertEquals(List.of(), model.findSimilar(5, 10));
+
+        like(4, 1);
+        assertEquals(List.of(2L, 3L, 4L, 5L), model.findSimilar(1, 10));
+    }
+
+    private void like(long userId, long... filmIds) {
+        for (long filmId : filmIds) {
+            likeGraph.addLike(filmId, userId);
+            model.likeChanged(filmId, userId);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package ru.yandex.practicum.filmorate.storage.inmemory;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.SuggestionType;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class InMemoryFilmStorageTest {
+
+    private final InMemoryFilmStorage filmStorage = new InMemoryFilmStorage(new InMemoryUserStorage());
+
+    @Test
+    void shouldSuggestByWordPrefixInAlphabeticalOrder() {
+        filmStorage.create(film(1L, "Зеркало"));
+        filmStorage.create(film(2L, "Белая зебра"));
+        filmStorage.create(film(3L, "Звёзды"));
+
+        assertEquals(List.of(
+                new Suggestion(SuggestionType.FILM, 2L, "Белая зебра"),
+                new Suggestion(SuggestionType.FILM, 1L, "Зеркало")
+        ), filmStorage.getSuggestions("ЗЕ", 10));
+        assertEquals(List.of(new Suggestion(SuggestionType.FILM, 2L, "Белая зебра")),
+                filmStorage.getSuggestions("зе", 1));
+        assertEquals(List.of(), filmStorage.getSuggestions("ебра", 10));
+    }
+
+    @Test
+    void shouldSuggestDirectorsAndForgetDeletedFilms() {
+        Film film = film(1L, "Мастер");
+        film.getDirectors().add(new Director(7, "Мартин Скорсезе"));
+        filmStorage.create(film);
+
+        assertEquals(List.of(
+                new Suggestion(SuggestionType.DIRECTOR, 7L, "Мартин Скорсезе"),
+                new Suggestion(SuggestionType.FILM, 1L, "Мастер")
+        ), filmStorage.getSuggestions("ма", 10));
+
+        filmStorage.update(film(1L, "Ученик"));
+        assertEquals(List.of(new Suggestion(SuggestionType.FILM, 1L, "Ученик")),
+                filmStorage.getSuggestions("уч", 10));
+        filmStorage.deleteFilm(1L);
+        assertEquals(List.of(), filmStorage.getSuggestions("уч", 10));
+    }
+
+    private static Film film(long id, String name) {
+        return Film.builder()
+                .id(id)
+                .name(name)
+                .description("")
+                .duration(100)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(new Mpa(1, "G"))
+                .build();
+    }
+}